@@ -0,0 +1,79 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.sql.init.SqlDataSourceScriptDatabaseInitializer;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.support.DatabaseMetaDataCallback;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+
+/*
+ schema.sql удаляет и заново создает таблицы, поэтому при постоянной базе его
+ нельзя выполнять на каждом старте. Этот инициализатор заменяет стандартный и
+ выполняет schema.sql и data.sql, только если в базе еще нет таблицы films.
+ В базу, созданную до появления films.like_count и films_reactions, вместо этого
+ выполняется migration.sql: он добавляет недостающие колонки, таблицы и индексы
+ и заполняет счетчики по films_likes. Все его команды можно выполнять повторно.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.sql.init.only-if-empty", havingValue = "true")
+public class EmptyDatabaseInitializer extends SqlDataSourceScriptDatabaseInitializer {
+    private static final String MIGRATION_SCRIPT = "migration.sql";
+
+    private final DataSource dataSource;
+
+    public EmptyDatabaseInitializer(DataSource dataSource, SqlInitializationProperties properties) {
+        super(dataSource, properties);
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public boolean initializeDatabase() {
+        if (!hasTable("FILMS")) {
+            log.info("База данных пуста, создается схема и справочники");
+            return super.initializeDatabase();
+        }
+        if (hasTable("FILMS_REACTIONS") && hasColumn("FILMS", "LIKE_COUNT")) {
+            log.info("Схема базы данных уже создана, инициализация пропущена");
+            return false;
+        }
+
+        log.info("Схема базы данных устарела, выполняется {}", MIGRATION_SCRIPT);
+        DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource(MIGRATION_SCRIPT)),
+                dataSource);
+        return true;
+    }
+
+    private boolean hasTable(String table) {
+        return readMetaData(metaData -> {
+            try (ResultSet tables = metaData.getTables(null, null, table, new String[]{"TABLE"})) {
+                return tables.next();
+            }
+        });
+    }
+
+    private boolean hasColumn(String table, String column) {
+        return readMetaData(metaData -> {
+            try (ResultSet columns = metaData.getColumns(null, null, table, column)) {
+                return columns.next();
+            }
+        });
+    }
+
+    private boolean readMetaData(DatabaseMetaDataCallback<Boolean> check) {
+        try {
+            return JdbcUtils.extractDatabaseMetaData(dataSource, check);
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Не удалось проверить схему базы данных", e);
+        }
+    }
+}
@@ -1,15 +1,38 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeBatchResult;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeResponse;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.ReactionResponse;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 @Slf4j
 @RestController
@@ -17,17 +40,74 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FilmController {
     private final FilmService filmService;
+    /*
+     ObjectMapper приложения, с настройками spring.jackson.* и модулями, чтобы
+     выгрузка и пакеты NDJSON разбирались и писались так же, как остальные ответы.
+     */
+    private final ObjectMapper objectMapper;
 
+    /*
+     Параметр view=count у списков и карточки фильма убирает из ответа лайки,
+     оставляя только их число likeCount.
+     */
     @GetMapping("/films")
-    public List<Film> getAll() {
+    public List<Film> getAll(@RequestParam(required = false) Integer limit,
+                             @RequestParam(required = false) Integer afterId,
+                             @RequestParam(defaultValue = "asc") String sort,
+                             @RequestParam(defaultValue = "full") String view) {
 
-        return filmService.findAll();
+        if (limit == null) {
+            return filmService.findAll(view);
+        }
+
+        return filmService.findPage(limit, afterId, sort, view);
+    }
+
+    /*
+     Выгрузка всего каталога в формате NDJSON: по одному фильму в строке. Фильмы
+     пишутся в ответ по мере чтения из хранилища, без сборки полного списка в памяти.
+     */
+    @GetMapping(value = "/films/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                /* Строки разделяются только переводом строки, без пробела Jackson между корневыми значениями. */
+                generator.setRootValueSeparator(null);
+                filmService.streamAll(film -> {
+                    try {
+                        writer.writeValue(generator, film);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /*
+     Поиск по названию и описанию: by - поля через запятую, найдены должны быть
+     все слова query, слово подходит и как начало слова без учета регистра.
+     */
+    @GetMapping("/films/search")
+    public List<Film> search(@RequestParam String query,
+                             @RequestParam(defaultValue = "title,description") String by,
+                             @RequestParam(defaultValue = "10") Integer count,
+                             @RequestParam(defaultValue = "full") String view) {
+
+        return filmService.search(query, by, count, view);
     }
 
     @GetMapping("/films/{id}")
-    public Film getById(@PathVariable Integer id) {
+    public Film getById(@PathVariable Integer id, @RequestParam(defaultValue = "full") String view) {
 
-        return filmService.findById(id);
+        return filmService.findById(id, view);
     }
 
     @PostMapping("/films")
@@ -35,6 +115,25 @@ public class FilmController {
         return filmService.create(film);
     }
 
+    @PostMapping(value = "/films/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<BatchItemResult> postBatch(@RequestBody List<Film> films) {
+
+        return filmService.createAll(films.iterator());
+    }
+
+    /*
+     Пакет в формате NDJSON читается из тела запроса по одной строке, без разбора
+     всего тела в список. Строка с не корректным JSON не прерывает импорт: для нее
+     возвращается результат с ошибкой, как для фильма, не прошедшего проверку.
+     Пустые строки пропускаются.
+     */
+    @PostMapping(value = "/films/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public List<BatchItemResult> postBatchNdjson(InputStream body) throws IOException {
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            return filmService.createAll(new NdjsonFilms(lines, objectMapper.readerFor(Film.class)));
+        }
+    }
+
     @PutMapping("/films")
     public Film put(@Valid @RequestBody Film film) {
 
@@ -53,10 +152,66 @@ public class FilmController {
         return filmService.removeLike(id, userId);
     }
 
+    /*
+     С параметром view=count вместо всего фильма возвращаются только статус и новое
+     число лайков, поэтому время ответа не зависит от популярности фильма.
+     */
+    @PutMapping(value = "/films/{id}/like/{userId}", params = "view=count")
+    public LikeResponse putLikeCount(@PathVariable Integer id, @PathVariable Integer userId) {
+
+        return filmService.addLikeAndCount(id, userId);
+    }
+
+    @DeleteMapping(value = "/films/{id}/like/{userId}", params = "view=count")
+    public LikeResponse deleteLikeCount(@PathVariable Integer id, @PathVariable Integer userId) {
+
+        return filmService.removeLikeAndCount(id, userId);
+    }
+
+    @PutMapping("/films/{id}/react/{userId}/{emoji}")
+    public ReactionResponse putReaction(@PathVariable Integer id, @PathVariable Integer userId,
+                                        @PathVariable String emoji) {
+
+        return filmService.react(id, userId, emoji);
+    }
+
+    @PostMapping("/films/likes/batch")
+    public LikeBatchResult postLikes(@RequestBody List<LikeEvent> events) {
+
+        return filmService.applyLikes(events);
+    }
+
     @GetMapping("/films/popular")
-    public List<Film> getPopular(@RequestParam(defaultValue = "10") Integer count) {
+    public List<Film> getPopular(@RequestParam(defaultValue = "10") Integer count,
+                                 @RequestParam(defaultValue = "full") String view,
+                                 @RequestParam(required = false) String reaction,
+                                 @RequestParam(required = false) Integer genreId,
+                                 @RequestParam(required = false) Integer year) {
+
+        return filmService.getTopFilms(count, view, reaction, genreId, year);
+    }
 
-        return filmService.getTopFilms(count);
+    /*
+     Похожие фильмы берутся из таблицы соседей, которая обновляется в фоне, поэтому
+     изменения лайков попадают в ответ с задержкой до одного интервала пересчета.
+     */
+    @GetMapping("/films/{id}/similar")
+    public List<Film> getSimilar(@PathVariable Integer id,
+                                 @RequestParam(defaultValue = "10") Integer count,
+                                 @RequestParam(defaultValue = "full") String view) {
+
+        return filmService.getSimilarFilms(id, count, view);
+    }
+
+    /*
+     Рекомендации по лайкам пользователей с похожими вкусами.
+     */
+    @GetMapping("/users/{id}/recommendations")
+    public List<Film> getRecommendations(@PathVariable Integer id,
+                                         @RequestParam(defaultValue = "10") Integer count,
+                                         @RequestParam(defaultValue = "full") String view) {
+
+        return filmService.getRecommendations(id, count, view);
     }
 
     @GetMapping("/genres")
@@ -83,4 +238,51 @@ public class FilmController {
         return filmService.findMpaById(id);
     }
 
+    /*
+     Фильмы из строк NDJSON. Строка разбирается в next(), ошибка разбора
+     передается как ValidationException, и следующая строка читается как обычно.
+     */
+    private static class NdjsonFilms implements Iterator<Film> {
+        private final BufferedReader lines;
+        private final ObjectReader reader;
+        private String nextLine;
+
+        private NdjsonFilms(BufferedReader lines, ObjectReader reader) {
+            this.lines = lines;
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (nextLine == null) {
+                    String line = lines.readLine();
+                    if (line == null) {
+                        return false;
+                    }
+                    if (!line.isBlank()) {
+                        nextLine = line;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Film next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String line = nextLine;
+            nextLine = null;
+            try {
+                return reader.readValue(line);
+            } catch (JsonProcessingException e) {
+                throw new ValidationException("Передан не корректный JSON фильма: " + e.getOriginalMessage());
+            }
+        }
+    }
+
 }
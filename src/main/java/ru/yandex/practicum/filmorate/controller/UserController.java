@@ -19,8 +19,14 @@ public class UserController {
     private final UserService userService;
 
     @GetMapping
-    public List<User> getAll() {
-        return userService.findAll();
+    public List<User> getAll(@RequestParam(required = false) Integer limit,
+                             @RequestParam(required = false) Integer afterId,
+                             @RequestParam(defaultValue = "asc") String sort) {
+        if (limit == null) {
+            return userService.findAll();
+        }
+
+        return userService.findPage(limit, afterId, sort);
     }
 
     @GetMapping("/{id}")
@@ -79,6 +85,19 @@ public class UserController {
         }
     }
 
+    @GetMapping("/{id}/friends/suggestions")
+    public List<User> getFriendSuggestions(@PathVariable String id,
+                                           @RequestParam(defaultValue = "10") Integer count) {
+
+        try {
+            return userService.findFriendSuggestions(Integer.parseInt(id), count);
+        } catch (NumberFormatException e) {
+            log.error("Переданый ID: {} не является целым числом", id);
+            throw new IdPassingException(String.format("Переданый ID: %s не является целым числом",
+                    id));
+        }
+    }
+
     @GetMapping("/{id}/friends/common/{otherId}")
     public List<User> getCommonFriends(@PathVariable String id, @PathVariable String otherId) {
 
@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.exception;
+
+public class LikeQueueOverflowException extends RuntimeException {
+    public LikeQueueOverflowException(String message) {
+        super(message);
+    }
+}
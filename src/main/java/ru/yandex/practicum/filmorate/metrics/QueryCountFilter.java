@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/*
+ Считает SQL-запросы, выполненные при обработке HTTP-запроса, и пишет их число
+ в распределение filmorate.request.queries с тегами method и uri. Число также
+ сохраняется в атрибуте запроса для тега queries метрики http.server.requests.
+ Ответы, которые пишутся в другом потоке (выгрузка /films/export), учитываются
+ только в части, выполненной до начала потоковой записи.
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryCountFilter extends OncePerRequestFilter {
+    public static final String QUERY_COUNT_ATTRIBUTE = QueryCountFilter.class.getName() + ".QUERY_COUNT";
+    static final String METRIC_NAME = "filmorate.request.queries";
+
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        QueryCounter.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            int count = QueryCounter.stop();
+            request.setAttribute(QUERY_COUNT_ATTRIBUTE, count);
+
+            Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            DistributionSummary.builder(METRIC_NAME)
+                    .description("Число SQL-запросов на один HTTP-запрос")
+                    .tag("method", request.getMethod())
+                    .tag("uri", uri == null ? "UNKNOWN" : uri.toString())
+                    .register(meterRegistry)
+                    .record(count);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.boot.actuate.metrics.web.servlet.WebMvcTagsContributor;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/*
+ Добавляет к http.server.requests тег queries с числом выполненных SQL-запросов,
+ чтобы рост числа запросов на эндпоинт (N+1) был виден на тех же графиках.
+ Значения больше MAX_EXACT_QUERIES объединяются, чтобы не плодить временные ряды.
+ */
+@Component
+public class QueryCountTagsContributor implements WebMvcTagsContributor {
+    private static final int MAX_EXACT_QUERIES = 20;
+
+    @Override
+    public Iterable<Tag> getTags(HttpServletRequest request, HttpServletResponse response,
+                                 Object handler, Throwable exception) {
+        Object count = request.getAttribute(QueryCountFilter.QUERY_COUNT_ATTRIBUTE);
+        if (!(count instanceof Integer)) {
+            return Tags.of("queries", "UNKNOWN");
+        }
+
+        int queries = (Integer) count;
+        return Tags.of("queries", queries > MAX_EXACT_QUERIES ? "over_" + MAX_EXACT_QUERIES : String.valueOf(queries));
+    }
+
+    @Override
+    public Iterable<Tag> getLongRequestTags(HttpServletRequest request, Object handler) {
+        return Tags.empty();
+    }
+}
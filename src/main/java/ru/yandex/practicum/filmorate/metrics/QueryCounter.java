@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+/*
+ Счетчик SQL-запросов, выполненных текущим потоком. Считает только между start() и
+ stop(), то есть внутри HTTP-запроса; запросы вне него (инициализация схемы,
+ фоновые задачи) не учитываются.
+ */
+public final class QueryCounter {
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<>();
+
+    private QueryCounter() {
+    }
+
+    public static void start() {
+        COUNT.set(new int[1]);
+    }
+
+    public static void increment() {
+        int[] count = COUNT.get();
+        if (count != null) {
+            count[0]++;
+        }
+    }
+
+    public static int stop() {
+        int[] count = COUNT.get();
+        COUNT.remove();
+
+        return count == null ? 0 : count[0];
+    }
+}
@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+
+/*
+ Замеряет каждый вызов метода хранилища таймером filmorate.storage с тегами
+ storage, method и exception. Число ошибок - это число замеров с exception,
+ отличным от none.
+ */
+@RequiredArgsConstructor
+class StorageMetricsInterceptor implements MethodInterceptor {
+    static final String METRIC_NAME = "filmorate.storage";
+
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    private volatile MeterRegistry meterRegistry;
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        MeterRegistry registry = meterRegistry();
+        if (registry == null) {
+            return invocation.proceed();
+        }
+
+        Timer.Sample sample = Timer.start(registry);
+        String exception = "none";
+        try {
+            return invocation.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(METRIC_NAME)
+                    .description("Время выполнения методов хранилищ")
+                    .tag("storage", AopUtils.getTargetClass(invocation.getThis()).getSimpleName())
+                    .tag("method", invocation.getMethod().getName())
+                    .tag("exception", exception)
+                    .register(registry));
+        }
+    }
+
+    private MeterRegistry meterRegistry() {
+        MeterRegistry registry = meterRegistry;
+
+        if (registry == null) {
+            registry = meterRegistryProvider.getIfAvailable();
+            meterRegistry = registry;
+        }
+
+        return registry;
+    }
+}
@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.framework.autoproxy.AbstractBeanFactoryAwareAdvisingPostProcessor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcher;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.lang.reflect.Method;
+
+/*
+ Оборачивает все реализации FilmStorage и UserStorage (и в базе, и в памяти)
+ в StorageMetricsInterceptor. Если бин уже является прокси (например, из-за
+ @Transactional), перехватчик добавляется в него первым, чтобы время транзакции
+ попадало в замер. MeterRegistry берется лениво: постпроцессор создается раньше
+ реестра метрик.
+ */
+@Component
+public class StorageMetricsPostProcessor extends AbstractBeanFactoryAwareAdvisingPostProcessor {
+
+    public StorageMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        ComposablePointcut pointcut = new ComposablePointcut(clazz ->
+                FilmStorage.class.isAssignableFrom(clazz) || UserStorage.class.isAssignableFrom(clazz))
+                .intersection(new StaticMethodMatcher() {
+                    @Override
+                    public boolean matches(Method method, Class<?> targetClass) {
+                        return !ReflectionUtils.isObjectMethod(method);
+                    }
+                });
+
+        this.advisor = new DefaultPointcutAdvisor(pointcut, new StorageMetricsInterceptor(meterRegistry));
+        setBeforeExistingAdvisors(true);
+    }
+}
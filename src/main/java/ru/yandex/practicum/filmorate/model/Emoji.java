@@ -1,7 +1,38 @@
 package ru.yandex.practicum.filmorate.model;
 
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+/*
+ Порядок значений не менять: номер значения хранится в LikeMap, а список
+ совпадает с ENUM колонок emoji в schema.sql. Новые реакции добавляются в конец.
+ Положительные реакции считаются лайками фильма и поднимают его в популярных,
+ SAD и ANGRY - нет.
+ */
 public enum Emoji {
-    LIKE
-}
+    LIKE(true),
+    LOVE(true),
+    LAUGH(true),
+    WOW(true),
+    SAD(false),
+    ANGRY(false);
+
+    private final boolean positive;
 
+    Emoji(boolean positive) {
+        this.positive = positive;
+    }
 
+    public boolean isPositive() {
+        return positive;
+    }
+
+    public static Emoji from(String value) {
+        for (Emoji emoji : values()) {
+            if (emoji.name().equalsIgnoreCase(value)) {
+                return emoji;
+            }
+        }
+
+        throw new ValidationException("Передана не корректная реакция: " + value);
+    }
+}
@@ -2,8 +2,8 @@ package ru.yandex.practicum.filmorate.model;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
@@ -15,14 +15,11 @@ import javax.validation.constraints.PositiveOrZero;
 import javax.validation.constraints.Size;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 @Getter
 @Setter
-@AllArgsConstructor
-@Builder
 public class Film {
 
     @PositiveOrZero
@@ -42,15 +39,33 @@ public class Film {
     private int duration;
 
    /*
-    Задание с лайками выполнено с доп. функциональностью намерено
+    Задание с лайками выполнено с доп. функциональностью намерено.
+    Лайки не загружаются при виде FilmView.COUNT, тогда likes равно null,
+    а их число берется из likeCount.
     */
 
-    private Map<Integer, Emoji> likes = new HashMap<>();
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<Integer, Emoji> likes = new LikeMap();
+
+    private int likeCount;
 
     private Mpa mpa;
 
     private List<Genre> genres = new ArrayList<>();
 
+    @Builder
+    public Film(Integer id, String name, String description, LocalDate releaseDate,
+                int duration, Map<Integer, Emoji> likes, Mpa mpa, List<Genre> genres) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.releaseDate = releaseDate;
+        this.duration = duration;
+        this.likes = likes;
+        this.mpa = mpa;
+        this.genres = genres;
+    }
+
     public Film(Integer id, String name, String description, LocalDate releaseDate,
                 int duration, Mpa mpa) {
         this.id = id;
@@ -82,11 +97,7 @@ public class Film {
         this.description = description;
         this.releaseDate = releaseDate;
         this.duration = duration;
-        if (likes == null) {
-            this.likes = new HashMap<>();
-        } else {
-            this.likes = likes;
-        }
+        this.likes = new LikeMap(likes);
         this.mpa = mpa;
         if (genres == null) {
             this.genres = new ArrayList<>();
@@ -95,6 +106,29 @@ public class Film {
         }
     }
 
+    /*
+     Лайками считаются только положительные реакции, см. Emoji.
+     */
+    public int getLikeCount() {
+        if (likes == null) {
+            return likeCount;
+        }
+
+        return (int) likes.values().stream().filter(Emoji::isPositive).count();
+    }
+
+    /*
+     Копия фильма без лайков для ответа с видом FilmView.COUNT.
+     */
+    public Film withoutLikes() {
+        return withoutLikes(getLikeCount());
+    }
 
+    public Film withoutLikes(int likeCount) {
+        Film film = new Film(id, name, description, releaseDate, duration, null, mpa, genres);
+        film.setLikeCount(likeCount);
+
+        return film;
+    }
 }
 
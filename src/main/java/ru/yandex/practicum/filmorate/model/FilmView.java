@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.model;
+
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+/*
+ FULL - фильм со всеми лайками, COUNT - без лайков, только их число из счетчика.
+ */
+public enum FilmView {
+    FULL,
+    COUNT;
+
+    public static FilmView from(String value) {
+        for (FilmView view : values()) {
+            if (view.name().equalsIgnoreCase(value)) {
+                return view;
+            }
+        }
+
+        throw new ValidationException("Передан не корректный вид ответа: " + value);
+    }
+}
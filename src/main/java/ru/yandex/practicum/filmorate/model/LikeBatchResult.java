@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/*
+ Итог пакетной обработки лайков: received - получено событий, added и removed -
+ реально добавлено и удалено лайков, rejected - события с несуществующим фильмом
+ или пользователем, unchanged - повторы и события, не изменившие состояние.
+ */
+@Getter
+@RequiredArgsConstructor
+public class LikeBatchResult {
+    private final int received;
+    private final int added;
+    private final int removed;
+    private final int rejected;
+
+    public int getUnchanged() {
+        return received - added - removed - rejected;
+    }
+}
@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class LikeEvent {
+    private final Integer filmId;
+    private final Integer userId;
+    private final LikeOperation op;
+
+    @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
+    public LikeEvent(@JsonProperty("filmId") Integer filmId,
+                     @JsonProperty("userId") Integer userId,
+                     @JsonProperty("op") LikeOperation op) {
+        this.filmId = filmId;
+        this.userId = userId;
+        this.op = op;
+    }
+}
@@ -0,0 +1,162 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/*
+ Компактное хранение лайков фильма: отсортированный массив ID пользователей и
+ параллельный массив номеров эмодзи, около 5 байт на лайк вместо объекта записи
+ HashMap с упакованными ключом и значением. Поиск - двоичный, добавление ID
+ больше последнего (так лайки читаются из базы) - в конец массива.
+ Класс не потокобезопасен, как и HashMap, который он заменяет.
+ */
+public class LikeMap extends AbstractMap<Integer, Emoji> {
+    private static final Emoji[] EMOJI = Emoji.values();
+    private static final int[] NO_USERS = new int[0];
+    private static final byte[] NO_EMOJI = new byte[0];
+
+    private int[] userIds = NO_USERS;
+    private byte[] emoji = NO_EMOJI;
+    private int size;
+
+    public LikeMap() {
+    }
+
+    public LikeMap(Map<Integer, Emoji> likes) {
+        if (likes instanceof LikeMap) {
+            LikeMap other = (LikeMap) likes;
+            userIds = Arrays.copyOf(other.userIds, other.size);
+            emoji = Arrays.copyOf(other.emoji, other.size);
+            size = other.size;
+        } else if (likes != null) {
+            putAll(likes);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Emoji get(Object key) {
+        int index = indexOf(key);
+
+        return index < 0 ? null : EMOJI[emoji[index]];
+    }
+
+    @Override
+    public Emoji put(Integer userId, Emoji value) {
+        if (userId == null || value == null) {
+            throw new NullPointerException("Лайк без пользователя или эмодзи");
+        }
+        int index = size > 0 && userId > userIds[size - 1] ? -size - 1 : Arrays.binarySearch(userIds, 0, size, userId);
+        if (index >= 0) {
+            Emoji previous = EMOJI[emoji[index]];
+            emoji[index] = (byte) value.ordinal();
+            return previous;
+        }
+
+        int position = -index - 1;
+        if (size == userIds.length) {
+            int capacity = Math.max(4, size + (size >> 1));
+            userIds = Arrays.copyOf(userIds, capacity);
+            emoji = Arrays.copyOf(emoji, capacity);
+        }
+        System.arraycopy(userIds, position, userIds, position + 1, size - position);
+        System.arraycopy(emoji, position, emoji, position + 1, size - position);
+        userIds[position] = userId;
+        emoji[position] = (byte) value.ordinal();
+        size++;
+
+        return null;
+    }
+
+    @Override
+    public Emoji remove(Object key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        Emoji previous = EMOJI[emoji[index]];
+        removeAt(index);
+
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        userIds = NO_USERS;
+        emoji = NO_EMOJI;
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<Integer, Emoji>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Integer, Emoji>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof Integer)) {
+            return -1;
+        }
+
+        return Arrays.binarySearch(userIds, 0, size, (Integer) key);
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(userIds, index + 1, userIds, index, size - index - 1);
+        System.arraycopy(emoji, index + 1, emoji, index, size - index - 1);
+        size--;
+    }
+
+    private class EntryIterator implements Iterator<Entry<Integer, Emoji>> {
+        private int next;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<Integer, Emoji> next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+
+            return new SimpleImmutableEntry<>(userIds[last], EMOJI[emoji[last]]);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+}
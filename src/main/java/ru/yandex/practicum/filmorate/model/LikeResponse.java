@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/*
+ Короткий ответ на лайк: что произошло и сколько лайков у фильма стало.
+ likeCount берется из счетчика фильма, лайки при этом не перечитываются.
+ Для события в очереди отложенной записи likeCount не возвращается.
+ */
+@Getter
+@RequiredArgsConstructor
+public class LikeResponse {
+    private final Integer filmId;
+    private final Integer userId;
+    private final LikeStatus status;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Integer likeCount;
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+/*
+ CHANGED - у пользователя уже была реакция на фильм, и она заменена другой.
+ QUEUED - событие принято в очередь отложенной записи и будет записано позже.
+ */
+public enum LikeStatus {
+    ADDED,
+    CHANGED,
+    REMOVED,
+    UNCHANGED,
+    QUEUED
+}
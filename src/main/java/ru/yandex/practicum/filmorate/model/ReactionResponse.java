@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+
+/*
+ Ответ на реакцию: статус операции, число положительных реакций фильма (likeCount) и
+ счетчики фильма по каждой реакции. Все числа берутся из счетчиков, строки
+ films_likes не перечитываются.
+ */
+@Getter
+@RequiredArgsConstructor
+public class ReactionResponse {
+    private final Integer filmId;
+    private final Integer userId;
+    private final Emoji emoji;
+    private final LikeStatus status;
+    private final int likeCount;
+    private final Map<Emoji, Integer> reactions;
+}
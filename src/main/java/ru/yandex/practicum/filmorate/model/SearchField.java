@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.model;
+
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/*
+ Поля фильма для поиска: TITLE - название, DESCRIPTION - описание.
+ */
+public enum SearchField {
+    TITLE,
+    DESCRIPTION;
+
+    public static SearchField from(String value) {
+        for (SearchField field : values()) {
+            if (field.name().equalsIgnoreCase(value.trim())) {
+                return field;
+            }
+        }
+
+        throw new ValidationException("Передано не корректное поле поиска: " + value);
+    }
+
+    /*
+     Список полей через запятую, например "title,description".
+     */
+    public static Set<SearchField> fromList(String values) {
+        Set<SearchField> fields = EnumSet.noneOf(SearchField.class);
+        for (String value : values.split(",")) {
+            fields.add(from(value));
+        }
+
+        return fields;
+    }
+}
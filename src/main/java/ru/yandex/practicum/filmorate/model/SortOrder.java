@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+public enum SortOrder {
+    ASC,
+    DESC;
+
+    public static SortOrder from(String value) {
+        for (SortOrder sortOrder : values()) {
+            if (sortOrder.name().equalsIgnoreCase(value)) {
+                return sortOrder;
+            }
+        }
+
+        throw new ValidationException("Передан не корректный порядок сортировки: " + value);
+    }
+}
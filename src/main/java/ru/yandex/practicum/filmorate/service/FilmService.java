@@ -1,41 +1,94 @@
 package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.IdNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.Emoji;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeBatchResult;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeResponse;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.ReactionResponse;
+import ru.yandex.practicum.filmorate.model.SearchField;
+import ru.yandex.practicum.filmorate.model.SortOrder;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 
-import java.util.HashMap;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class FilmService {
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int BATCH_CHUNK_SIZE = 1000;
+    private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
     private final FilmStorage filmStorage;
     private final UserService userService;
+    private final ObjectProvider<LikeWriteBehindQueue> likeQueue;
+
+    public FilmService(FilmStorage filmStorage, UserService userService) {
+        this(filmStorage, userService, null);
+    }
 
     @Autowired
-    public FilmService(@Qualifier("db") FilmStorage filmStorage, UserService userService) {
+    public FilmService(@Qualifier("db") FilmStorage filmStorage, UserService userService,
+                       ObjectProvider<LikeWriteBehindQueue> likeQueue) {
         this.filmStorage = filmStorage;
         this.userService = userService;
+        this.likeQueue = likeQueue;
     }
 
 
-    public List<Film> findAll() {
+    public List<Film> findAll(String view) {
+
+        return filmStorage.findAll(FilmView.from(view));
+    }
+
+    public List<Film> findPage(Integer limit, Integer afterId, String sort, String view) {
+
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            log.error("Запрошен не корректный размер страницы фильмов {}", limit);
+            throw new ValidationException("Запрошен не корректный размер страницы фильмов: " + limit);
+        }
+
+        return filmStorage.findPage(afterId, limit, SortOrder.from(sort), FilmView.from(view));
+    }
+
+    public void streamAll(Consumer<Film> consumer) {
 
-        return filmStorage.findAll();
+        filmStorage.streamAll(consumer);
     }
 
     public Film findById(Integer id) {
-        Film film = filmStorage.findById(id);
+
+        return findById(id, FilmView.FULL.name());
+    }
+
+    public Film findById(Integer id, String view) {
+        Film film = filmStorage.findById(id, FilmView.from(view));
 
         if (film == null) {
             log.error("Фильм с переданным ID {} не существует", id);
@@ -51,14 +104,47 @@ public class FilmService {
         return filmStorage.create(film);
     }
 
+    /*
+     Фильмы читаются из источника по одному и передаются в хранилище частями по
+     BATCH_CHUNK_SIZE, каждая часть - отдельная транзакция. Ошибка в одном фильме
+     не прерывает импорт: для него возвращается результат с текстом ошибки. Источник
+     сообщает о фильме, который не удалось прочитать, исключением ValidationException
+     из next(); такой фильм тоже получает результат с ошибкой.
+     */
+    public List<BatchItemResult> createAll(Iterator<Film> films) {
+        List<BatchItemResult> results = new ArrayList<>();
+        List<Film> chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+        List<Integer> positions = new ArrayList<>(BATCH_CHUNK_SIZE);
+
+        for (int index = 0; films.hasNext(); index++) {
+            Film film;
+            try {
+                film = films.next();
+            } catch (ValidationException e) {
+                results.add(BatchItemResult.failed(index, e.getMessage()));
+                continue;
+            }
+            String error = validate(film);
+            if (error != null) {
+                results.add(BatchItemResult.failed(index, error));
+                continue;
+            }
+            chunk.add(film);
+            positions.add(index);
+            if (chunk.size() == BATCH_CHUNK_SIZE) {
+                createChunk(chunk, positions, results);
+            }
+        }
+        createChunk(chunk, positions, results);
+        results.sort(Comparator.comparingInt(BatchItemResult::getIndex));
+        log.debug("Пакетно обработано фильмов: {}", results.size());
+
+        return results;
+    }
+
     public Film update(Film film) {
         findById(film.getId());
 
-        if (filmStorage.findById(film.getId()) == null) {
-            log.error("Ошибка идентификации фильма. Не существует фильма с ID {}", film.getId());
-            throw new IdNotFoundException("Ошибка идентификации фильма. Не существует фильма с ID " + film.getId());
-        }
-
         filmStorage.update(film);
         log.debug("Обновлен фильм: {}", film);
 
@@ -66,40 +152,188 @@ public class FilmService {
     }
 
     public Film addLike(Integer filmId, Integer userId) {
-        Film film = findById(filmId);
+        findById(filmId);
         userService.findById(userId);
-        Map<Integer, Emoji> assessmentMap = film.getLikes();
-
-        if (assessmentMap == null) {
-            assessmentMap = new HashMap<>();
-        }
-
-        assessmentMap.put(userId, Emoji.LIKE);
-        film.setLikes(assessmentMap);
 
         return filmStorage.addLike(filmId, userId);
     }
 
     public Film removeLike(Integer filmId, Integer userId) {
-        Film film = findById(filmId);
-
+        findById(filmId);
         userService.findById(userId);
-        Map<Integer, Emoji> assessmentMap = film.getLikes();
-        assessmentMap.remove(userId);
-        film.setLikes(assessmentMap);
 
         return filmStorage.removeLike(filmId, userId);
     }
 
+    /*
+     Для короткого ответа фильм не загружается целиком: его существование проверяется
+     по ID, а число лайков берется из счетчика. Если включена отложенная запись, событие
+     только ставится в очередь без обращений к базе, а ID проверяются при записи.
+     */
+    public LikeResponse addLikeAndCount(Integer filmId, Integer userId) {
+        LikeWriteBehindQueue queue = writeBehindQueue();
+        if (queue != null) {
+            return queue.enqueue(new LikeEvent(filmId, userId, LikeOperation.LIKE));
+        }
+        checkFilmExists(filmId);
+        userService.findById(userId);
+
+        return filmStorage.addLikeAndCount(filmId, userId);
+    }
+
+    public LikeResponse removeLikeAndCount(Integer filmId, Integer userId) {
+        LikeWriteBehindQueue queue = writeBehindQueue();
+        if (queue != null) {
+            return queue.enqueue(new LikeEvent(filmId, userId, LikeOperation.UNLIKE));
+        }
+        checkFilmExists(filmId);
+        userService.findById(userId);
+
+        return filmStorage.removeLikeAndCount(filmId, userId);
+    }
+
+    public ReactionResponse react(Integer filmId, Integer userId, String emoji) {
+        Emoji reaction = Emoji.from(emoji);
+        checkFilmExists(filmId);
+        userService.findById(userId);
+
+        ReactionResponse response = filmStorage.react(filmId, userId, reaction);
+        log.debug("Реакция {} пользователя с ID {} на фильм с ID {}: {}", reaction, userId, filmId,
+                response.getStatus());
+
+        return response;
+    }
+
+    /*
+     Пакет событий сворачивается до последнего события по каждой паре фильм-пользователь,
+     существование фильмов и пользователей проверяется двумя запросами на весь пакет,
+     а не findById на каждое событие.
+     */
+    public LikeBatchResult applyLikes(List<LikeEvent> events) {
+        Map<Long, LikeEvent> lastEvents = new LinkedHashMap<>();
+        Set<Integer> filmIds = new HashSet<>();
+        Set<Integer> userIds = new HashSet<>();
+        int rejected = 0;
+        for (LikeEvent event : events) {
+            if (event == null || event.getFilmId() == null || event.getUserId() == null || event.getOp() == null) {
+                rejected++;
+                continue;
+            }
+            lastEvents.remove(likeKey(event));
+            lastEvents.put(likeKey(event), event);
+            filmIds.add(event.getFilmId());
+            userIds.add(event.getUserId());
+        }
+
+        Set<Integer> existingFilmIds = filmStorage.findExistingIds(filmIds);
+        Set<Integer> existingUserIds = userService.findExistingIds(userIds);
+        List<LikeEvent> applicable = new ArrayList<>(lastEvents.size());
+        for (LikeEvent event : lastEvents.values()) {
+            if (existingFilmIds.contains(event.getFilmId()) && existingUserIds.contains(event.getUserId())) {
+                applicable.add(event);
+            } else {
+                rejected++;
+            }
+        }
+
+        LikeBatchResult applied = filmStorage.applyLikes(applicable);
+        log.debug("Пакет лайков: получено {}, добавлено {}, удалено {}, отклонено {}",
+                events.size(), applied.getAdded(), applied.getRemoved(), rejected);
+
+        return new LikeBatchResult(events.size(), applied.getAdded(), applied.getRemoved(), rejected);
+    }
+
     public List<Film> getTopFilms(Integer count) {
 
+        return getTopFilms(count, FilmView.FULL.name(), null, null, null);
+    }
+
+    public List<Film> getTopFilms(Integer count, String view, String reaction, Integer genreId, Integer year) {
+        validateCount(count);
+
+        if (reaction == null) {
+            return filmStorage.topFilms(count, genreId, year, FilmView.from(view));
+        }
+
+        return filmStorage.topFilmsByReaction(Emoji.from(reaction), count, genreId, year, FilmView.from(view));
+    }
+
+    public List<Film> getRecommendations(Integer userId, Integer count, String view) {
+        validateCount(count);
+        userService.findById(userId);
+
+        return filmStorage.recommendations(userId, count, FilmView.from(view));
+    }
+
+    public List<Film> getSimilarFilms(Integer filmId, Integer count, String view) {
+        validateCount(count);
+        checkFilmExists(filmId);
+
+        return filmStorage.similarFilms(filmId, count, FilmView.from(view));
+    }
+
+    public List<Film> search(String query, String by, Integer count, String view) {
+        validateCount(count);
+        if (query == null || query.isBlank()) {
+            log.error("Передан пустой поисковый запрос");
+            throw new ValidationException("Передан пустой поисковый запрос");
+        }
+
+        return filmStorage.search(query, SearchField.fromList(by), count, FilmView.from(view));
+    }
+
+    public int refreshSimilarFilms(ForkJoinPool pool) {
+
+        return filmStorage.refreshSimilarFilms(pool);
+    }
+
+    private LikeWriteBehindQueue writeBehindQueue() {
+        return likeQueue == null ? null : likeQueue.getIfAvailable();
+    }
+
+    private void validateCount(Integer count) {
         if (count <= 0) {
             log.error("Запрошено не корректное количество фильмов {}", count);
             throw new ValidationException("Запрошено не корректное количество фильмов: "
                     + count);
         }
+    }
+
+    private void checkFilmExists(Integer id) {
+        if (filmStorage.findExistingIds(Collections.singleton(id)).isEmpty()) {
+            log.error("Фильм с переданным ID {} не существует", id);
+            throw new IdNotFoundException("Не существует фильма с ID: " + id);
+        }
+    }
+
+    private void createChunk(List<Film> chunk, List<Integer> positions, List<BatchItemResult> results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        for (BatchItemResult result : filmStorage.createAll(chunk)) {
+            results.add(new BatchItemResult(positions.get(result.getIndex()), result.getId(), result.getError()));
+        }
+        chunk.clear();
+        positions.clear();
+    }
+
+    private static long likeKey(LikeEvent event) {
+        return ((long) event.getFilmId() << 32) | (event.getUserId() & 0xFFFFFFFFL);
+    }
+
+    private String validate(Film film) {
+        if (film == null) {
+            return "Передан пустой фильм";
+        }
+        Set<ConstraintViolation<Film>> violations = VALIDATOR.validate(film);
+        if (violations.isEmpty()) {
+            return null;
+        }
 
-        return filmStorage.topFilms(count);
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
     }
 
     public List<Genre> findAllGenres() {
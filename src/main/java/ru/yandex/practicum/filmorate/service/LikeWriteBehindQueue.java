@@ -0,0 +1,316 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.LikeQueueOverflowException;
+import ru.yandex.practicum.filmorate.model.LikeBatchResult;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeResponse;
+import ru.yandex.practicum.filmorate.model.LikeStatus;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ Отложенная запись лайков. Событие сначала дописывается в локальный журнал, затем
+ кладется в очередь, где для каждой пары фильм-пользователь остается только
+ последнее событие. Фоновый поток раз в flush-interval-ms (или раньше, когда
+ набралось batch-size пар) забирает всю очередь и записывает ее пакетами через
+ FilmService.applyLikes.
+
+ Журнал состоит из сегментов: перед сбросом текущий сегмент закрывается, новые
+ события пишутся в следующий, а закрытые сегменты удаляются только после успешной
+ записи в базу. При старте оставшиеся сегменты перечитываются и записываются
+ повторно - события задают состояние (лайк есть или его нет), поэтому повтор
+ безопасен. Журнал переживает перезапуск и падение процесса; при падении ОС
+ могут потеряться события, еще не сброшенные системой на диск.
+
+ Очередь ограничена capacity парами. Если она полна, запрос ждет освобождения
+ места до offer-timeout-ms и затем получает 503.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.likes.write-behind.enabled", havingValue = "true")
+public class LikeWriteBehindQueue {
+    private static final String SEGMENT_PREFIX = "likes-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final FilmService filmService;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutNanos;
+    private final Path journalDir;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Map<Long, LikeEvent> pending = new LinkedHashMap<>();
+    private final List<Path> sealedSegments = new ArrayList<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Object flushLock = new Object();
+
+    private BufferedWriter journal;
+    private Path journalSegment;
+    private long segmentNumber;
+    private ScheduledExecutorService worker;
+
+    public LikeWriteBehindQueue(FilmService filmService,
+                                @Value("${filmorate.likes.write-behind.capacity:100000}") int capacity,
+                                @Value("${filmorate.likes.write-behind.batch-size:1000}") int batchSize,
+                                @Value("${filmorate.likes.write-behind.flush-interval-ms:200}") long flushIntervalMs,
+                                @Value("${filmorate.likes.write-behind.offer-timeout-ms:100}") long offerTimeoutMs,
+                                @Value("${filmorate.likes.write-behind.journal-dir:./db/likes-journal}")
+                                String journalDir) {
+        this.filmService = filmService;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs);
+        this.journalDir = Paths.get(journalDir);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(journalDir);
+        lock.lock();
+        try {
+            for (Path segment : existingSegments()) {
+                replay(segment);
+                sealedSegments.add(segment);
+                segmentNumber = Math.max(segmentNumber, segmentNumber(segment));
+            }
+            openNextSegment();
+        } finally {
+            lock.unlock();
+        }
+        if (!sealedSegments.isEmpty()) {
+            log.info("Из журнала лайков восстановлено событий: {}", pending.size());
+        }
+
+        worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "like-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long initialDelay = sealedSegments.isEmpty() ? flushIntervalMs : 0;
+        worker.scheduleWithFixedDelay(this::flushQuietly, initialDelay, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        worker.shutdown();
+        worker.awaitTermination(flushIntervalMs * 10, TimeUnit.MILLISECONDS);
+        flushQuietly();
+        lock.lock();
+        try {
+            journal.close();
+            if (pending.isEmpty() && sealedSegments.isEmpty()) {
+                Files.deleteIfExists(journalSegment);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public LikeResponse enqueue(LikeEvent event) {
+        long key = likeKey(event);
+        int size;
+        lock.lock();
+        try {
+            long remaining = offerTimeoutNanos;
+            while (pending.size() >= capacity && !pending.containsKey(key)) {
+                if (remaining <= 0) {
+                    log.warn("Очередь лайков переполнена: {} событий", pending.size());
+                    throw new LikeQueueOverflowException("Очередь лайков переполнена, повторите запрос позже");
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            appendToJournal(event);
+            pending.remove(key);
+            pending.put(key, event);
+            size = pending.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LikeQueueOverflowException("Ожидание места в очереди лайков прервано");
+        } finally {
+            lock.unlock();
+        }
+
+        if (size >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                worker.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                log.debug("Очередь лайков останавливается, событие будет записано при остановке");
+            }
+        }
+
+        return new LikeResponse(event.getFilmId(), event.getUserId(), LikeStatus.QUEUED, null);
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     Забирает всю очередь и записывает ее в базу. Если запись не удалась, события,
+     для которых не появилось более новых, возвращаются в очередь, а их сегменты
+     журнала сохраняются до следующей успешной записи.
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            List<LikeEvent> events;
+            List<Path> segments;
+            lock.lock();
+            try {
+                if (pending.isEmpty() && sealedSegments.isEmpty()) {
+                    return;
+                }
+                sealCurrentSegment();
+                events = new ArrayList<>(pending.values());
+                segments = new ArrayList<>(sealedSegments);
+                pending.clear();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                for (int from = 0; from < events.size(); from += batchSize) {
+                    LikeBatchResult result = filmService.applyLikes(events.subList(from,
+                            Math.min(from + batchSize, events.size())));
+                    if (result.getRejected() > 0) {
+                        log.warn("Из очереди лайков отклонено событий с несуществующими ID: {}", result.getRejected());
+                    }
+                }
+            } catch (RuntimeException e) {
+                requeue(events);
+                throw e;
+            }
+
+            lock.lock();
+            try {
+                sealedSegments.removeAll(segments);
+            } finally {
+                lock.unlock();
+            }
+            for (Path segment : segments) {
+                Files.deleteIfExists(segment);
+            }
+            log.debug("Из очереди лайков записано событий: {}", events.size());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            log.error("Не удалось записать очередь лайков, повтор при следующем сбросе", e);
+        }
+    }
+
+    private void requeue(List<LikeEvent> events) {
+        lock.lock();
+        try {
+            for (LikeEvent event : events) {
+                pending.putIfAbsent(likeKey(event), event);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void appendToJournal(LikeEvent event) {
+        try {
+            journal.write(event.getFilmId() + ";" + event.getUserId() + ";" + event.getOp().name());
+            journal.newLine();
+            journal.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать событие в журнал лайков", e);
+        }
+    }
+
+    private void sealCurrentSegment() throws IOException {
+        journal.close();
+        sealedSegments.add(journalSegment);
+        openNextSegment();
+    }
+
+    private void openNextSegment() throws IOException {
+        segmentNumber++;
+        journalSegment = journalDir.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+        journal = Files.newBufferedWriter(journalSegment, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> existingSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(journalDir,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            files.forEach(segments::add);
+        }
+        segments.sort(null);
+
+        return segments;
+    }
+
+    /*
+     Последняя строка сегмента может быть недописана, если процесс упал во время
+     записи; такие строки пропускаются.
+     */
+    private void replay(Path segment) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(";");
+                try {
+                    LikeEvent event = new LikeEvent(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                            LikeOperation.valueOf(fields[2]));
+                    pending.remove(likeKey(event));
+                    pending.put(likeKey(event), event);
+                } catch (RuntimeException e) {
+                    log.warn("Пропущена поврежденная строка журнала лайков {}: {}", segment, line);
+                }
+            }
+        }
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static long likeKey(LikeEvent event) {
+        return ((long) event.getFilmId() << 32) | (event.getUserId() & 0xFFFFFFFFL);
+    }
+}
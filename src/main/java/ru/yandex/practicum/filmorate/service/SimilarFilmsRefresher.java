@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Фоновое обновление таблицы похожих фильмов: раз в refresh-interval-ms
+ пересчитываются фильмы, у которых изменились лайки или жанры. Пересчет идет в
+ собственном пуле fork-join, чтобы не занимать общий пул parallel stream.
+ */
+@Slf4j
+@Component
+public class SimilarFilmsRefresher {
+    private final FilmService filmService;
+    private final long refreshIntervalMs;
+    private final int parallelism;
+
+    private ForkJoinPool pool;
+    private ScheduledExecutorService worker;
+
+    public SimilarFilmsRefresher(FilmService filmService,
+                                 @Value("${filmorate.films.similar.refresh-interval-ms:1000}") long refreshIntervalMs,
+                                 @Value("${filmorate.films.similar.parallelism:0}") int parallelism) {
+        this.filmService = filmService;
+        this.refreshIntervalMs = refreshIntervalMs;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    @PostConstruct
+    public void start() {
+        pool = new ForkJoinPool(parallelism);
+        worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "similar-films-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(this::refreshQuietly, refreshIntervalMs, refreshIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        worker.shutdown();
+        worker.awaitTermination(refreshIntervalMs * 10, TimeUnit.MILLISECONDS);
+        pool.shutdown();
+    }
+
+    public int refresh() {
+        long started = System.nanoTime();
+        int refreshed = filmService.refreshSimilarFilms(pool);
+        if (refreshed > 0) {
+            log.debug("Пересчитаны похожие фильмы для {} фильмов за {} мс", refreshed,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        }
+
+        return refreshed;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.error("Не удалось пересчитать похожие фильмы, повтор при следующем запуске", e);
+        }
+    }
+}
@@ -7,16 +7,22 @@ import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.IdNotFoundException;
 import ru.yandex.practicum.filmorate.exception.IdPassingException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Friends;
+import ru.yandex.practicum.filmorate.model.SortOrder;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 @Slf4j
 @Service
 @Component
 public class UserService {
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final UserStorage userStorage;
 
     @Autowired
@@ -28,6 +34,16 @@ public class UserService {
         return userStorage.findAll();
     }
 
+    public List<User> findPage(Integer limit, Integer afterId, String sort) {
+
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            log.error("Запрошен не корректный размер страницы пользователей {}", limit);
+            throw new ValidationException("Запрошен не корректный размер страницы пользователей: " + limit);
+        }
+
+        return userStorage.findPage(afterId, limit, SortOrder.from(sort));
+    }
+
     public User findById(Integer id) {
         User user = userStorage.findById(id);
 
@@ -39,6 +55,11 @@ public class UserService {
         return user;
     }
 
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+
+        return userStorage.findExistingIds(ids);
+    }
+
     public User create(User user) {
 
         if (user.getName() == null || user.getName().isBlank()) {
@@ -105,4 +126,15 @@ public class UserService {
         return userStorage.findMutualFriendsByTwoIds(id, friendId);
     }
 
+    public List<User> findFriendSuggestions(Integer id, Integer count) {
+
+        if (count <= 0 || count > MAX_PAGE_SIZE) {
+            log.error("Запрошено не корректное количество пользователей {}", count);
+            throw new ValidationException("Запрошено не корректное количество пользователей: " + count);
+        }
+        findById(id);
+
+        return userStorage.findFriendSuggestions(id, count);
+    }
+
 }
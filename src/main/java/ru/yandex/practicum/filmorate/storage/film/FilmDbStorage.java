@@ -3,18 +3,53 @@ package ru.yandex.practicum.filmorate.storage.film;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.dao.FilmMaker;
+import ru.yandex.practicum.filmorate.exception.IdNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.Emoji;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeBatchResult;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeMap;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeResponse;
+import ru.yandex.practicum.filmorate.model.LikeStatus;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.ReactionResponse;
+import ru.yandex.practicum.filmorate.model.SearchField;
+import ru.yandex.practicum.filmorate.model.SortOrder;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -22,209 +57,959 @@ import java.util.stream.Collectors;
 @Qualifier("db")
 @RequiredArgsConstructor
 public class FilmDbStorage implements FilmStorage {
+    private static final String FILMS_SQL = "SELECT f.id, " +
+            "f.name, " +
+            "f.description, " +
+            "f.release_date, " +
+            "f.duration," +
+            "f.like_count, " +
+            "m.id as mpa_id, " +
+            "m.name as mpa_name " +
+            "FROM films f " +
+            "INNER JOIN mpa m ON f.mpa_id=m.id ";
+
+    private static final String INSERT_LIKE_IF_ABSENT_SQL = "INSERT INTO films_likes (film_id, user_id, emoji) " +
+            "SELECT e.film_id, e.user_id, 'LIKE' " +
+            "FROM (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER))) AS e (film_id, user_id) " +
+            "WHERE NOT EXISTS (SELECT 1 FROM films_likes fl " +
+            "WHERE fl.film_id = e.film_id AND fl.user_id = e.user_id)";
+
+    private static final String INSERT_REACTION_IF_ABSENT_SQL = "INSERT INTO films_likes (film_id, user_id, emoji) " +
+            "SELECT e.film_id, e.user_id, e.emoji " +
+            "FROM (VALUES (CAST(? AS INTEGER), CAST(? AS INTEGER), CAST(? AS VARCHAR))) AS e (film_id, user_id, emoji) " +
+            "WHERE NOT EXISTS (SELECT 1 FROM films_likes fl " +
+            "WHERE fl.film_id = e.film_id AND fl.user_id = e.user_id)";
+
+    private static final String DELETE_REACTION_SQL = "SELECT emoji FROM OLD TABLE " +
+            "(DELETE FROM films_likes WHERE film_id = ? AND user_id = ?)";
+
+    private static final String MERGE_REACTION_COUNT_SQL = "MERGE INTO films_reactions r " +
+            "USING (VALUES (CAST(? AS INTEGER), CAST(? AS VARCHAR), CAST(? AS INTEGER))) AS d (film_id, emoji, delta) " +
+            "ON r.film_id = d.film_id AND r.emoji = d.emoji " +
+            "WHEN MATCHED THEN UPDATE SET reaction_count = r.reaction_count + d.delta " +
+            "WHEN NOT MATCHED THEN INSERT (film_id, emoji, reaction_count) VALUES (d.film_id, d.emoji, d.delta)";
+
+    private static final int IN_CLAUSE_CHUNK_SIZE = 1000;
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int FILM_LOCKS = 64;
+    private static final String INSERT_FILM_SQL = "INSERT INTO films (name, description, " +
+            "release_date, duration, mpa_id) VALUES (?,?,?,?,?)";
+
     private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataCache referenceData;
+
+    private final Object[] filmLocks = newLocks(FILM_LOCKS);
+
+    private volatile PopularFilms leaderboard;
+    private volatile ReactionLeaderboards reactionLeaderboards;
+    private volatile LikeIndex likeIndex;
+    private volatile SimilarFilms similarFilms;
+    private volatile FilmSearchIndex searchIndex;
 
     @Override
-    public List<Film> findAll() {
-        return jdbcTemplate.query("SELECT f.id, " +
-                        "f.name, " +
-                        "f.description, " +
-                        "f.release_date, " +
-                        "f.duration," +
-                        "m.id as mpa_id, " +
-                        "m.name as mpa_name " +
-                        "FROM films f " +
-                        "INNER JOIN mpa m ON f.mpa_id=m.id",
-                new FilmMaker(jdbcTemplate));
+    public List<Film> findAll(FilmView view) {
+        List<Film> films = jdbcTemplate.query(FILMS_SQL + "ORDER BY f.id", new FilmMaker());
+        attachLikesAndGenres(films, "", new Object[0], view);
+
+        return films;
     }
 
     @Override
-    public Film findById(Integer id) {
-        String sql = "SELECT f.id, " +
-                "f.name, " +
-                "f.description, " +
-                "f.release_date, " +
-                "f.duration," +
-                "m.id as mpa_id, " +
-                "m.name as mpa_name " +
-                "FROM films f " +
-                "INNER JOIN mpa m ON f.mpa_id=m.id " +
-                "WHERE f.id=?";
-        return jdbcTemplate.query(sql,
-                        new Object[]{id}, new FilmMaker(jdbcTemplate))
-                .stream().findAny().orElse(null);
+    public List<Film> findPage(Integer afterId, int limit, SortOrder sort, FilmView view) {
+        String sql = FILMS_SQL +
+                (afterId == null ? "" : (sort == SortOrder.ASC ? "WHERE f.id > ? " : "WHERE f.id < ? ")) +
+                "ORDER BY f.id " + sort.name() + " " +
+                "LIMIT ?";
+        Object[] args = afterId == null ? new Object[]{limit} : new Object[]{afterId, limit};
+
+        return loadLikesAndGenres(jdbcTemplate.query(sql, new FilmMaker(), args), view);
     }
 
+    /*
+     Каталог читается тремя курсорами на одном соединении: фильмы, лайки и жанры,
+     все упорядочены по ID фильма. Лайки и жанры сливаются с текущим фильмом по мере
+     чтения, и фильм сразу отдается потребителю, поэтому в памяти держится только
+     одна запись, а не весь каталог.
+     */
     @Override
+    public void streamAll(Consumer<Film> consumer) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement filmsPs = prepareCursor(connection, FILMS_SQL + "ORDER BY f.id");
+                 PreparedStatement likesPs = prepareCursor(connection, "SELECT film_id, user_id, emoji " +
+                         "FROM films_likes " +
+                         "ORDER BY film_id, user_id");
+                 PreparedStatement genresPs = prepareCursor(connection, "SELECT film_id, genres_id " +
+                         "FROM films_genres " +
+                         "ORDER BY film_id, genres_id");
+                 ResultSet films = filmsPs.executeQuery();
+                 ResultSet likes = likesPs.executeQuery();
+                 ResultSet genres = genresPs.executeQuery()) {
+                FilmMaker filmMaker = new FilmMaker();
+                boolean hasLike = likes.next();
+                boolean hasGenre = genres.next();
+                int rowNum = 0;
+
+                while (films.next()) {
+                    Film film = filmMaker.mapRow(films, rowNum++);
+                    while (hasLike && likes.getInt("film_id") <= film.getId()) {
+                        if (likes.getInt("film_id") == film.getId()) {
+                            film.getLikes().put(likes.getInt("user_id"), Emoji.valueOf(likes.getString("emoji")));
+                        }
+                        hasLike = likes.next();
+                    }
+                    while (hasGenre && genres.getInt("film_id") <= film.getId()) {
+                        Genre genre = referenceData.findGenreById(genres.getInt("genres_id"));
+                        if (genres.getInt("film_id") == film.getId() && genre != null) {
+                            film.getGenres().add(genre);
+                        }
+                        hasGenre = genres.next();
+                    }
+                    consumer.accept(film);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Film findById(Integer id, FilmView view) {
+        List<Film> films = jdbcTemplate.query(FILMS_SQL + "WHERE f.id=?",
+                new FilmMaker(), id);
+
+        return loadLikesAndGenres(films, view).stream().findAny().orElse(null);
+    }
+
+    @Override
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        List<Integer> idList = new ArrayList<>(ids);
+        Set<Integer> existing = new HashSet<>();
+        for (int from = 0; from < idList.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            List<Integer> chunk = idList.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, idList.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            existing.addAll(jdbcTemplate.queryForList("SELECT id FROM films WHERE id IN (" + placeholders + ")",
+                    Integer.class, chunk.toArray()));
+        }
+
+        return existing;
+    }
+
+    @Override
+    @Transactional
     public Film create(Film film) {
-        genreIsValid(film);
-        Integer mpaId = mpaIdFind(film);
-        if (mpaId != null) {
-            String sql = "INSERT INTO films (name, description, release_date, duration, mpa_id) VALUES (?,?,?,?,?)";
-            jdbcTemplate.update(sql, film.getName(), film.getDescription(),
-                    film.getReleaseDate(), film.getDuration(), mpaId);
-        } else {
-            log.error("Передан не корректный MPA: " + film.getGenres());
-            throw new ValidationException("Передан не корректный MPA: " + film.getMpa());
+        List<Genre> genres = resolveGenres(film);
+        Mpa mpa = resolveMpa(film);
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_FILM_SQL, new String[]{"id"});
+            setFilmParameters(ps, film, mpa);
+            return ps;
+        }, keyHolder);
+        int filmId = Objects.requireNonNull(keyHolder.getKey()).intValue();
+
+        jdbcTemplate.batchUpdate("INSERT INTO films_genres (genres_id, film_id) VALUES (?, ?)",
+                genres, genres.size(), (ps, genre) -> {
+                    ps.setInt(1, genre.getId());
+                    ps.setInt(2, filmId);
+                });
+        afterCommit(() -> {
+            leaderboard().put(filmId, 0);
+            leaderboard().setAttributes(filmId, film.getReleaseDate(), genres);
+            similarFilms().setGenres(filmId, genres);
+            searchIndex().put(filmId, film.getName(), film.getDescription());
+        });
+
+        film.setId(filmId);
+        film.setMpa(mpa);
+        film.setGenres(genres);
+        film.setLikes(new LikeMap());
+
+        return film;
+    }
+
+    /*
+     Справочники проверяются по кэшу, без запросов. Фильмы вставляются одним
+     пакетом, ID берутся из сгенерированных ключей пакета, жанры всех фильмов -
+     вторым пакетом. Фильм с неизвестным MPA или жанром пропускается с ошибкой,
+     остальные создаются.
+     */
+    @Override
+    @Transactional
+    public List<BatchItemResult> createAll(List<Film> films) {
+        BatchItemResult[] results = new BatchItemResult[films.size()];
+        List<Integer> positions = new ArrayList<>(films.size());
+        List<Mpa> mpas = new ArrayList<>(films.size());
+        List<List<Genre>> genres = new ArrayList<>(films.size());
+        for (int i = 0; i < films.size(); i++) {
+            try {
+                Film film = films.get(i);
+                List<Genre> filmGenres = resolveGenres(film);
+                mpas.add(resolveMpa(film));
+                genres.add(filmGenres);
+                positions.add(i);
+            } catch (ValidationException e) {
+                results[i] = BatchItemResult.failed(i, e.getMessage());
+            }
         }
 
-        film.setId(jdbcTemplate.query("SELECT MAX(id) AS last_id FROM films",
-                        (rs, rowNum) -> rs.getInt("last_id"))
-                .stream()
-                .findAny().orElse(0));
+        List<Integer> ids = jdbcTemplate.execute((ConnectionCallback<List<Integer>>) connection -> {
+            List<Integer> generatedIds = new ArrayList<>(positions.size());
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_FILM_SQL, new String[]{"id"})) {
+                for (int i = 0; i < positions.size(); i++) {
+                    setFilmParameters(ps, films.get(positions.get(i)), mpas.get(i));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        generatedIds.add(keys.getInt(1));
+                    }
+                }
+            }
+            return generatedIds;
+        });
 
-        for (Genre genre : film.getGenres()) {
-            jdbcTemplate.update("INSERT INTO films_genres (genres_id, " +
-                    "film_id) VALUES (?, ?)", genre.getId(), film.getId());
+        List<int[]> filmsGenres = new ArrayList<>();
+        for (int i = 0; i < positions.size(); i++) {
+            Film film = films.get(positions.get(i));
+            int filmId = Objects.requireNonNull(ids).get(i);
+            film.setId(filmId);
+            film.setMpa(mpas.get(i));
+            film.setGenres(genres.get(i));
+            film.setLikes(new LikeMap());
+            for (Genre genre : genres.get(i)) {
+                filmsGenres.add(new int[]{genre.getId(), filmId});
+            }
+            List<Genre> filmGenres = genres.get(i);
+            afterCommit(() -> {
+                leaderboard().put(filmId, 0);
+                leaderboard().setAttributes(filmId, film.getReleaseDate(), filmGenres);
+                similarFilms().setGenres(filmId, filmGenres);
+                searchIndex().put(filmId, film.getName(), film.getDescription());
+            });
+            results[positions.get(i)] = BatchItemResult.created(positions.get(i), filmId);
         }
+        jdbcTemplate.batchUpdate("INSERT INTO films_genres (genres_id, film_id) VALUES (?, ?)",
+                filmsGenres, filmsGenres.size(), (ps, filmGenre) -> {
+                    ps.setInt(1, filmGenre[0]);
+                    ps.setInt(2, filmGenre[1]);
+                });
 
-        return findById(film.getId());
+        return Arrays.asList(results);
     }
 
     @Override
+    @Transactional
     public Film update(Film film) {
-        List<Integer> likesFromDb = jdbcTemplate.query("SELECT user_id " +
-                        "FROM films_likes " +
-                        "WHERE film_id = ?" +
-                        "ORDER BY user_id",
-                (rs, rowNum) -> rs.getInt("user_id"), film.getId());
-        List<Integer> likesFromQuery = new ArrayList<>(film.getLikes().keySet());
-        Collections.sort(likesFromQuery);
-
-        if (!likesFromQuery.equals(likesFromDb)) {
-            log.error("Переданные лайки: " + likesFromQuery +
-                    " не соответствуют сохраненным в базе данных : " + likesFromDb);
-            throw new ValidationException("Переданные лайки: " + likesFromQuery +
-                    " не соответствуют сохраненным в базе данных : " + likesFromDb);
-        }
-
-        genreIsValid(film);
-        Integer mpaId = mpaIdFind(film);
-
-        if (mpaId != null) {
-            String sql = "UPDATE films SET name=?, description=?, " +
-                    " release_date=?, duration=?, mpa_id=? WHERE id = ?";
-            jdbcTemplate.update(sql, film.getName(), film.getDescription(),
-                    film.getReleaseDate(), film.getDuration(),
-                    mpaId, film.getId());
-        } else {
-            log.error("Передан не корректный MPA: " + film.getGenres());
-            throw new ValidationException("Передан не корректный MPA: " + film.getGenres());
+        List<Genre> genres = resolveGenres(film);
+        Mpa mpa = resolveMpa(film);
+
+        int updated = jdbcTemplate.update("UPDATE films SET name=?, description=?, " +
+                        "release_date=?, duration=?, mpa_id=? WHERE id = ?",
+                film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), mpa.getId(), film.getId());
+        if (updated == 0) {
+            log.error("Ошибка идентификации фильма. Не существует фильма с ID {}", film.getId());
+            throw new IdNotFoundException("Ошибка идентификации фильма. Не существует фильма с ID " + film.getId());
+        }
+        Set<Integer> likes = film.getLikes() == null ? Collections.emptySet() : film.getLikes().keySet();
+        if (!likesMatch(film.getId(), likes)) {
+            log.error("Переданные лайки: " + likes +
+                    " не соответствуют сохраненным в базе данных");
+            throw new ValidationException("Переданные лайки: " + likes +
+                    " не соответствуют сохраненным в базе данных");
         }
 
-        List<Integer> genresIds = new ArrayList<>();
-        List<Genre> genres = film.getGenres()
-                .stream()
-                .distinct()
-                .collect(Collectors.toList());
-        film.setGenres(genres);
+        Set<Integer> staleGenreIds = new HashSet<>(jdbcTemplate.queryForList("SELECT genres_id " +
+                "FROM films_genres " +
+                "WHERE film_id=?", Integer.class, film.getId()));
+        List<Genre> newGenres = new ArrayList<>();
         for (Genre genre : genres) {
-            Boolean isGenreIdExist = jdbcTemplate.query("SELECT COUNT(*)>0 AS isGenreId " +
-                                    "FROM films_genres " +
-                                    "WHERE film_id=? AND genres_id=?",
-                            (rs, rowNum) -> rs.getBoolean("isGenreId"),
-                            film.getId(), genre.getId())
-                    .stream()
-                    .findAny().orElse(false);
-            if (!isGenreIdExist) {
-                jdbcTemplate.update("INSERT INTO films_genres (genres_id, " +
-                        "film_id) VALUES (?, ?)", genre.getId(), film.getId());
+            if (!staleGenreIds.remove(genre.getId())) {
+                newGenres.add(genre);
             }
-            genresIds.add(genre.getId());
         }
 
-        List<Integer> existGenresIds = jdbcTemplate.query("SELECT genres_id " +
-                        "FROM films_genres " +
-                        "WHERE film_id=?",
-                (rs, rowNum) -> rs.getInt("genres_id"), film.getId());
-        for (Integer id : existGenresIds) {
-            if (!genresIds.contains(id))
-                jdbcTemplate.update("DELETE FROM films_genres " +
-                        "WHERE film_id=? AND genres_id=?", film.getId(), id);
-        }
-        return findById(film.getId());
+        jdbcTemplate.batchUpdate("INSERT INTO films_genres (genres_id, film_id) VALUES (?, ?)",
+                newGenres, newGenres.size(), (ps, genre) -> {
+                    ps.setInt(1, genre.getId());
+                    ps.setInt(2, film.getId());
+                });
+        jdbcTemplate.batchUpdate("DELETE FROM films_genres WHERE film_id=? AND genres_id=?",
+                staleGenreIds, staleGenreIds.size(), (ps, genreId) -> {
+                    ps.setInt(1, film.getId());
+                    ps.setInt(2, genreId);
+                });
+
+        film.setMpa(mpa);
+        film.setGenres(genres);
+        afterCommit(() -> {
+            leaderboard().setAttributes(film.getId(), film.getReleaseDate(), genres);
+            similarFilms().setGenres(film.getId(), genres);
+            searchIndex().put(film.getId(), film.getName(), film.getDescription());
+        });
+
+        return film;
     }
 
     @Override
+    @Transactional
     public Film addLike(Integer filmId, Integer userId) {
         jdbcTemplate.update("INSERT INTO films_likes (film_id, " +
                 "user_id, emoji) VALUES (?, ?, 'LIKE')", filmId, userId);
+        afterCommit(() -> likeIndex().add(filmId, userId));
+        changeLikeCount(filmId, 1);
+        changeReactionCount(filmId, Emoji.LIKE, 1);
 
         return findById(filmId);
     }
 
     @Override
+    @Transactional
     public Film removeLike(Integer filmId, Integer userId) {
-        jdbcTemplate.update("DELETE FROM films_likes " +
-                "WHERE film_id=? AND user_id=?", filmId, userId);
+        Emoji removed = deleteReaction(filmId, userId);
+        if (removed != null) {
+            afterCommit(() -> likeIndex().remove(filmId, userId));
+            if (removed.isPositive()) {
+                changeLikeCount(filmId, -1);
+            }
+            changeReactionCount(filmId, removed, -1);
+        }
 
         return findById(filmId);
     }
 
+    /*
+     Как и остальные изменения лайков, строка films блокируется раньше строк
+     films_reactions, чтобы одновременные изменения одного фильма не ждали друг
+     друга по кругу.
+     */
     @Override
-    public List<Film> topFilms(Integer count) {
-        String sql = "SELECT f.id, " +
-                "f.name, " +
-                "f.description, " +
-                "f.release_date, " +
-                "f.duration," +
-                "m.id as mpa_id, " +
-                "m.name as mpa_name " +
-                "FROM films f " +
-                "INNER JOIN mpa m ON f.mpa_id=m.id " +
-                "LEFT JOIN FILMS_LIKES fl on f.id = fl.film_id " +
-                "GROUP BY f.id " +
-                "ORDER BY COUNT(fl.film_id) DESC " +
-                "LIMIT ?";
-        return jdbcTemplate.query(sql, new Object[]{count},
-                new FilmMaker(jdbcTemplate));
+    @Transactional
+    public LikeResponse addLikeAndCount(Integer filmId, Integer userId) {
+        int added = jdbcTemplate.update(INSERT_LIKE_IF_ABSENT_SQL, filmId, userId);
+        LikeResponse response = likeResponse(filmId, userId,
+                added > 0 ? LikeStatus.ADDED : LikeStatus.UNCHANGED, added);
+        if (added > 0) {
+            afterCommit(() -> likeIndex().add(filmId, userId));
+            changeReactionCount(filmId, Emoji.LIKE, added);
+        }
+
+        return response;
+    }
+
+    @Override
+    @Transactional
+    public LikeResponse removeLikeAndCount(Integer filmId, Integer userId) {
+        Emoji removed = deleteReaction(filmId, userId);
+        if (removed == null) {
+            return likeResponse(filmId, userId, LikeStatus.UNCHANGED, 0);
+        }
+        LikeResponse response = likeResponse(filmId, userId, LikeStatus.REMOVED, removed.isPositive() ? -1 : 0);
+        afterCommit(() -> likeIndex().remove(filmId, userId));
+        changeReactionCount(filmId, removed, -1);
+
+        return response;
+    }
+
+    /*
+     Реакция сначала заменяется UPDATE, который через OLD TABLE возвращает прежнюю;
+     если реакции не было, она вставляется. Счетчики меняются на разницу между
+     прежней и новой реакцией, like_count - только при смене положительной
+     реакции на отрицательную или наоборот.
+     */
+    @Override
+    @Transactional
+    public ReactionResponse react(Integer filmId, Integer userId, Emoji emoji) {
+        List<String> previous = jdbcTemplate.queryForList("SELECT emoji FROM OLD TABLE " +
+                        "(UPDATE films_likes SET emoji = ? WHERE film_id = ? AND user_id = ?)",
+                String.class, emoji.name(), filmId, userId);
+
+        Map<Emoji, Integer> deltas = new EnumMap<>(Emoji.class);
+        LikeStatus status;
+        int likeCount;
+        if (previous.isEmpty()) {
+            int added = jdbcTemplate.update(INSERT_REACTION_IF_ABSENT_SQL, filmId, userId, emoji.name());
+            status = added > 0 ? LikeStatus.ADDED : LikeStatus.UNCHANGED;
+            if (added > 0) {
+                afterCommit(() -> likeIndex().add(filmId, userId));
+            }
+            likeCount = added > 0 && emoji.isPositive() ? changeLikeCount(filmId, added) : readLikeCount(filmId);
+            deltas.put(emoji, added);
+        } else {
+            Emoji previousEmoji = Emoji.valueOf(previous.get(0));
+            status = previousEmoji == emoji ? LikeStatus.UNCHANGED : LikeStatus.CHANGED;
+            int likeDelta = likeWeight(emoji) - likeWeight(previousEmoji);
+            likeCount = likeDelta == 0 ? readLikeCount(filmId) : changeLikeCount(filmId, likeDelta);
+            if (status == LikeStatus.CHANGED) {
+                deltas.put(previousEmoji, -1);
+                deltas.put(emoji, 1);
+            }
+        }
+        Map<Integer, Map<Emoji, Integer>> reactions = changeReactionCounts(Collections.singletonMap(filmId, deltas));
+
+        return new ReactionResponse(filmId, userId, emoji, status, likeCount, reactions.get(filmId));
+    }
+
+    /*
+     Лайки добавляются вставкой «если еще нет», а UNLIKE удаляет реакцию пользователя
+     любого вида. По числу затронутых строк каждого события считается, на сколько
+     изменились like_count и счетчики реакций фильма, и они обновляются пакетами.
+     */
+    @Override
+    @Transactional
+    public LikeBatchResult applyLikes(List<LikeEvent> events) {
+        List<LikeEvent> likes = new ArrayList<>();
+        List<LikeEvent> unlikes = new ArrayList<>();
+        for (LikeEvent event : events) {
+            (event.getOp() == LikeOperation.LIKE ? likes : unlikes).add(event);
+        }
+
+        Map<Integer, Integer> likeCountDeltas = new HashMap<>();
+        int added = applyLikeBatch(INSERT_LIKE_IF_ABSENT_SQL, likes, 1, likeCountDeltas);
+        Map<Integer, Map<Emoji, Integer>> reactionDeltas = new HashMap<>();
+        likeCountDeltas.forEach((filmId, delta) -> addReactionDelta(reactionDeltas, filmId, Emoji.LIKE, delta));
+        int removed = deleteReactions(unlikes, likeCountDeltas, reactionDeltas);
+
+        List<Map.Entry<Integer, Integer>> deltas = new ArrayList<>(likeCountDeltas.entrySet());
+        deltas.removeIf(delta -> delta.getValue() == 0);
+        jdbcTemplate.batchUpdate("UPDATE films SET like_count = like_count + ? WHERE id = ?",
+                deltas, deltas.size(), (ps, delta) -> {
+                    ps.setInt(1, delta.getValue());
+                    ps.setInt(2, delta.getKey());
+                });
+        List<Integer> changedFilmIds = deltas.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+        afterCommit(() -> changedFilmIds.forEach(this::refreshLikeCount));
+        changeReactionCounts(reactionDeltas);
+
+        return new LikeBatchResult(events.size(), added, removed, 0);
+    }
+
+    @Override
+    public List<Film> topFilms(Integer count, Integer genreId, Integer year, FilmView view) {
+
+        return findByIds(leaderboard().top(count, genreId, year), view);
+    }
+
+    @Override
+    public List<Film> topFilmsByReaction(Emoji emoji, Integer count, Integer genreId, Integer year, FilmView view) {
+
+        return findByIds(reactionLeaderboards().top(emoji, count, leaderboard().matches(genreId, year)), view);
+    }
+
+    @Override
+    public List<Film> recommendations(Integer userId, Integer count, FilmView view) {
+
+        return findByIds(likeIndex().recommend(userId, count), view);
+    }
+
+    @Override
+    public List<Film> similarFilms(Integer filmId, Integer count, FilmView view) {
+
+        return findByIds(similarFilms().similar(filmId, count), view);
+    }
+
+    @Override
+    public int refreshSimilarFilms(ForkJoinPool pool) {
+
+        return similarFilms().refresh(pool);
+    }
+
+    @Override
+    public List<Film> search(String query, Set<SearchField> fields, Integer count, FilmView view) {
+        PopularFilms board = leaderboard();
+
+        return findByIds(searchIndex().search(query, fields, count, board::likeCount), view);
     }
 
     @Override
     public List<Genre> findAllGenres() {
-        return jdbcTemplate.query("SELECT * FROM genres",
-                new BeanPropertyRowMapper<>(Genre.class));
+        return referenceData.findAllGenres();
     }
 
     @Override
     public Genre findGenreById(Integer id) {
-        return jdbcTemplate.query("SELECT * FROM genres " +
-                                "WHERE id=?",
-                        new Object[]{id}, new BeanPropertyRowMapper<>(Genre.class))
-                .stream().findAny().orElse(null);
+        return referenceData.findGenreById(id);
     }
 
     @Override
     public List<Mpa> findAllMpa() {
-        return jdbcTemplate.query("SELECT * FROM mpa",
-                new BeanPropertyRowMapper<>(Mpa.class));
+        return referenceData.findAllMpa();
     }
 
     @Override
     public Mpa findMpaById(Integer id) {
-        return jdbcTemplate.query("SELECT * FROM mpa " +
-                                "WHERE id=?",
-                        new Object[]{id}, new BeanPropertyRowMapper<>(Mpa.class))
-                .stream().findAny().orElse(null);
+        return referenceData.findMpaById(id);
     }
 
 
-    private Integer mpaIdFind(Film film) {
-        return jdbcTemplate.query("SELECT id FROM mpa " +
-                                "WHERE id = ?",
-                        (rs, rowNum) -> rs.getInt("id"), film.getMpa().getId())
-                .stream()
-                .findAny().orElse(null);
-    }
-
-    private Boolean genreIsValid(Film film) {
+    /*
+     Жанры фильма без повторов, по возрастанию ID и с названиями из справочника.
+     */
+    private List<Genre> resolveGenres(Film film) {
+        if (film.getGenres() == null) {
+            return new ArrayList<>();
+        }
+        Map<Integer, Genre> genres = new TreeMap<>();
         for (Genre genre : film.getGenres()) {
-            if (findGenreById(genre.getId()) == null) {
+            Genre knownGenre = referenceData.findGenreById(genre.getId());
+            if (knownGenre == null) {
                 log.error("Передан не корректный жанр: " + genre);
                 throw new ValidationException("Передан не корректный жанр: " + genre);
             }
+            genres.put(knownGenre.getId(), knownGenre);
+        }
+
+        return new ArrayList<>(genres.values());
+    }
+
+    private int applyLikeBatch(String sql, List<LikeEvent> events, int sign, Map<Integer, Integer> deltas) {
+        int[][] rowCounts = jdbcTemplate.batchUpdate(sql, events, events.size(), (ps, event) -> {
+            ps.setInt(1, event.getFilmId());
+            ps.setInt(2, event.getUserId());
+        });
+
+        int changed = 0;
+        int position = 0;
+        List<LikeEvent> applied = new ArrayList<>();
+        for (int[] chunk : rowCounts) {
+            for (int rowCount : chunk) {
+                if (rowCount > 0) {
+                    LikeEvent event = events.get(position);
+                    applied.add(event);
+                    deltas.merge(event.getFilmId(), sign * rowCount, Integer::sum);
+                    changed += rowCount;
+                }
+                position++;
+            }
         }
-        return true;
+        afterCommit(() -> {
+            LikeIndex index = likeIndex();
+            for (LikeEvent event : applied) {
+                if (sign > 0) {
+                    index.add(event.getFilmId(), event.getUserId());
+                } else {
+                    index.remove(event.getFilmId(), event.getUserId());
+                }
+            }
+        });
+
+        return changed;
+    }
+
+    private LikeResponse likeResponse(Integer filmId, Integer userId, LikeStatus status, int delta) {
+        int likeCount = delta == 0 ? readLikeCount(filmId) : changeLikeCount(filmId, delta);
+
+        return new LikeResponse(filmId, userId, status, likeCount);
+    }
+
+    /*
+     Переданные ID пользователей сортируются и сверяются с лайками из базы, которые
+     читаются в порядке user_id по первичному ключу, без загрузки их в коллекцию.
+     */
+    private boolean likesMatch(Integer filmId, Set<Integer> likes) {
+        int[] userIds = likes.stream().mapToInt(Integer::intValue).sorted().toArray();
+        int[] matched = new int[1];
+        boolean[] mismatch = new boolean[1];
+        jdbcTemplate.query("SELECT user_id FROM films_likes WHERE film_id = ? ORDER BY user_id",
+                (RowCallbackHandler) rs -> {
+                    int index = matched[0]++;
+                    if (index >= userIds.length || userIds[index] != rs.getInt("user_id")) {
+                        mismatch[0] = true;
+                    }
+                }, filmId);
+
+        return !mismatch[0] && matched[0] == userIds.length;
+    }
+
+    private static int likeWeight(Emoji emoji) {
+        return emoji.isPositive() ? 1 : 0;
+    }
+
+    private int readLikeCount(Integer filmId) {
+        return Objects.requireNonNull(jdbcTemplate.queryForObject("SELECT like_count FROM films WHERE id = ?",
+                Integer.class, filmId));
+    }
+
+    /*
+     Удаляет реакцию пользователя на фильм и возвращает ее вид, null - если реакции не было.
+     */
+    private Emoji deleteReaction(Integer filmId, Integer userId) {
+        List<String> removed = jdbcTemplate.queryForList(DELETE_REACTION_SQL, String.class, filmId, userId);
+
+        return removed.isEmpty() ? null : Emoji.valueOf(removed.get(0));
+    }
+
+    /*
+     Реакции пакета удаляются по одной через OLD TABLE, чтобы знать вид каждой
+     удаленной реакции. Пакет JDBC в H2 тоже выполняет команды по одной, поэтому
+     обращений к базе столько же, сколько при пакетном DELETE.
+     */
+    private int deleteReactions(List<LikeEvent> events, Map<Integer, Integer> likeCountDeltas,
+                                Map<Integer, Map<Emoji, Integer>> reactionDeltas) {
+        List<LikeEvent> applied = new ArrayList<>();
+        int removedCount = Objects.requireNonNull(jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            int removed = 0;
+            try (PreparedStatement ps = connection.prepareStatement(DELETE_REACTION_SQL)) {
+                for (LikeEvent event : events) {
+                    ps.setInt(1, event.getFilmId());
+                    ps.setInt(2, event.getUserId());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            Emoji emoji = Emoji.valueOf(rs.getString("emoji"));
+                            applied.add(event);
+                            if (emoji.isPositive()) {
+                                likeCountDeltas.merge(event.getFilmId(), -1, Integer::sum);
+                            }
+                            addReactionDelta(reactionDeltas, event.getFilmId(), emoji, -1);
+                            removed++;
+                        }
+                    }
+                }
+            }
+            return removed;
+        }));
+        afterCommit(() -> {
+            LikeIndex index = likeIndex();
+            applied.forEach(event -> index.remove(event.getFilmId(), event.getUserId()));
+        });
+
+        return removedCount;
+    }
+
+    private static void addReactionDelta(Map<Integer, Map<Emoji, Integer>> deltas, Integer filmId,
+                                         Emoji emoji, int delta) {
+        deltas.computeIfAbsent(filmId, id -> new EnumMap<>(Emoji.class)).merge(emoji, delta, Integer::sum);
+    }
+
+    private void changeReactionCount(Integer filmId, Emoji emoji, int delta) {
+        changeReactionCounts(Collections.singletonMap(filmId, Collections.singletonMap(emoji, delta)));
+    }
+
+    /*
+     Счетчики films_reactions меняются пакетом MERGE на разницу, после фиксации
+     транзакции значения затронутых фильмов переносятся в рейтинги реакций.
+     Возвращает счетчики этих фильмов по всем реакциям.
+     */
+    private Map<Integer, Map<Emoji, Integer>> changeReactionCounts(Map<Integer, Map<Emoji, Integer>> deltas) {
+        List<Object[]> changes = new ArrayList<>();
+        deltas.forEach((filmId, filmDeltas) -> filmDeltas.forEach((emoji, delta) -> {
+            if (delta != 0) {
+                changes.add(new Object[]{filmId, emoji.name(), delta});
+            }
+        }));
+        jdbcTemplate.batchUpdate(MERGE_REACTION_COUNT_SQL, changes);
+        List<Integer> filmIds = new ArrayList<>(deltas.keySet());
+        afterCommit(() -> filmIds.forEach(this::refreshReactionCounts));
+
+        return readReactionCounts(filmIds);
+    }
+
+    /*
+     Как и для like_count, рейтинги реакций получают заново прочитанные после
+     фиксации счетчики под блокировкой фильма.
+     */
+    private void refreshReactionCounts(Integer filmId) {
+        synchronized (filmLocks[filmId & (filmLocks.length - 1)]) {
+            ReactionLeaderboards boards = reactionLeaderboards();
+            readReactionCounts(List.of(filmId)).get(filmId).forEach((emoji, count) ->
+                    boards.put(filmId, emoji, count));
+        }
+    }
+
+    private Map<Integer, Map<Emoji, Integer>> readReactionCounts(List<Integer> filmIds) {
+        Map<Integer, Map<Emoji, Integer>> counts = new HashMap<>();
+        for (int from = 0; from < filmIds.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            List<Integer> chunk = filmIds.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, filmIds.size()));
+            for (Integer filmId : chunk) {
+                Map<Emoji, Integer> filmCounts = new EnumMap<>(Emoji.class);
+                for (Emoji emoji : Emoji.values()) {
+                    filmCounts.put(emoji, 0);
+                }
+                counts.put(filmId, filmCounts);
+            }
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("SELECT film_id, emoji, reaction_count FROM films_reactions " +
+                            "WHERE film_id IN (" + placeholders + ")",
+                    (RowCallbackHandler) rs -> counts.get(rs.getInt("film_id"))
+                            .put(Emoji.valueOf(rs.getString("emoji")), rs.getInt("reaction_count")),
+                    chunk.toArray());
+        }
+
+        return counts;
+    }
+
+    private Mpa resolveMpa(Film film) {
+        Mpa mpa = film.getMpa() == null ? null : referenceData.findMpaById(film.getMpa().getId());
+        if (mpa == null) {
+            log.error("Передан не корректный MPA: " + film.getMpa());
+            throw new ValidationException("Передан не корректный MPA: " + film.getMpa());
+        }
+
+        return mpa;
+    }
+
+    private void setFilmParameters(PreparedStatement ps, Film film, Mpa mpa) throws SQLException {
+        ps.setString(1, film.getName());
+        ps.setString(2, film.getDescription());
+        ps.setObject(3, film.getReleaseDate());
+        ps.setInt(4, film.getDuration());
+        ps.setInt(5, mpa.getId());
+    }
+
+    /*
+     Счетчик films.like_count меняется тем же запросом, который возвращает его новое
+     значение для ответа.
+     */
+    private int changeLikeCount(Integer filmId, int delta) {
+        int[] likeCount = new int[1];
+        jdbcTemplate.query("SELECT like_count FROM FINAL TABLE " +
+                        "(UPDATE films SET like_count = like_count + ? WHERE id = ?)",
+                (RowCallbackHandler) rs -> likeCount[0] = rs.getInt("like_count"),
+                delta, filmId);
+        afterCommit(() -> refreshLikeCount(filmId));
+
+        return likeCount[0];
+    }
+
+    /*
+     Обработчики после фиксации разных транзакций могут выполниться не в порядке
+     фиксации, поэтому рейтинг получает не число из своей транзакции, а заново
+     прочитанное зафиксированное значение. Чтение и запись в рейтинг идут под
+     блокировкой фильма: более позднее чтение всегда записывается последним.
+     */
+    private void refreshLikeCount(Integer filmId) {
+        synchronized (filmLocks[filmId & (filmLocks.length - 1)]) {
+            leaderboard().put(filmId, readLikeCount(filmId));
+        }
+    }
+
+    /*
+     Индексы в памяти меняются только после фиксации транзакции, чтобы после отката
+     они не расходились с базой. Индекс запрашивается уже после фиксации: если он
+     еще не загружен, загрузка увидит зафиксированные данные. Вне транзакции
+     изменение применяется сразу.
+     */
+    private static void afterCommit(Runnable update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+
+    private static Object[] newLocks(int count) {
+        Object[] locks = new Object[count];
+        Arrays.setAll(locks, i -> new Object());
+
+        return locks;
+    }
+
+    private PreparedStatement prepareCursor(Connection connection, String sql) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sql,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(STREAM_FETCH_SIZE);
+
+        return ps;
+    }
+
+    /*
+     Жанры и год выпуска для рейтингов по жанрам и годам читаются вместе со
+     счетчиками лайков при первом обращении.
+     */
+    private PopularFilms leaderboard() {
+        PopularFilms board = leaderboard;
+
+        if (board == null) {
+            synchronized (this) {
+                board = leaderboard;
+                if (board == null) {
+                    PopularFilms loaded = new PopularFilms();
+                    Map<Integer, List<Genre>> genres = new HashMap<>();
+                    jdbcTemplate.query("SELECT film_id, genres_id FROM films_genres",
+                            (RowCallbackHandler) rs -> genres.computeIfAbsent(rs.getInt("film_id"),
+                                    id -> new ArrayList<>()).add(new Genre(rs.getInt("genres_id"))));
+                    jdbcTemplate.query("SELECT id, like_count, release_date FROM films",
+                            (RowCallbackHandler) rs -> {
+                                int filmId = rs.getInt("id");
+                                loaded.put(filmId, rs.getInt("like_count"));
+                                loaded.setAttributes(filmId, rs.getObject("release_date", LocalDate.class),
+                                        genres.get(filmId));
+                            });
+                    board = loaded;
+                    leaderboard = loaded;
+                }
+            }
+        }
+
+        return board;
+    }
+
+    private ReactionLeaderboards reactionLeaderboards() {
+        ReactionLeaderboards boards = reactionLeaderboards;
+
+        if (boards == null) {
+            synchronized (this) {
+                boards = reactionLeaderboards;
+                if (boards == null) {
+                    ReactionLeaderboards loaded = new ReactionLeaderboards();
+                    jdbcTemplate.query("SELECT film_id, emoji, reaction_count FROM films_reactions",
+                            (RowCallbackHandler) rs -> loaded.put(rs.getInt("film_id"),
+                                    Emoji.valueOf(rs.getString("emoji")), rs.getInt("reaction_count")));
+                    boards = loaded;
+                    reactionLeaderboards = loaded;
+                }
+            }
+        }
+
+        return boards;
+    }
+
+    /*
+     Индекс загружается при первом обращении одним проходом по первичному ключу
+     films_likes, дальше поддерживается при каждом изменении лайков.
+     */
+    private LikeIndex likeIndex() {
+        LikeIndex index = likeIndex;
+
+        if (index == null) {
+            synchronized (this) {
+                index = likeIndex;
+                if (index == null) {
+                    LikeIndex loaded = new LikeIndex();
+                    jdbcTemplate.query("SELECT film_id, user_id FROM films_likes ORDER BY film_id, user_id",
+                            (RowCallbackHandler) rs -> loaded.add(rs.getInt("film_id"), rs.getInt("user_id")));
+                    index = loaded;
+                    likeIndex = loaded;
+                }
+            }
+        }
+
+        return index;
+    }
+
+    private SimilarFilms similarFilms() {
+        SimilarFilms similar = similarFilms;
+
+        if (similar == null) {
+            synchronized (this) {
+                similar = similarFilms;
+                if (similar == null) {
+                    SimilarFilms loaded = new SimilarFilms(likeIndex());
+                    Map<Integer, List<Genre>> genres = new HashMap<>();
+                    jdbcTemplate.query("SELECT film_id, genres_id FROM films_genres",
+                            (RowCallbackHandler) rs -> genres.computeIfAbsent(rs.getInt("film_id"),
+                                    id -> new ArrayList<>()).add(new Genre(rs.getInt("genres_id"))));
+                    genres.forEach(loaded::setGenres);
+                    similar = loaded;
+                    similarFilms = loaded;
+                }
+            }
+        }
+
+        return similar;
+    }
+
+    /*
+     Индекс строится при первом обращении одним проходом по films, без поиска
+     LIKE по тексту, дальше поддерживается при создании и изменении фильмов.
+     */
+    private FilmSearchIndex searchIndex() {
+        FilmSearchIndex index = searchIndex;
+
+        if (index == null) {
+            synchronized (this) {
+                index = searchIndex;
+                if (index == null) {
+                    FilmSearchIndex loaded = new FilmSearchIndex();
+                    jdbcTemplate.query(connection -> prepareCursor(connection,
+                                    "SELECT id, name, description FROM films ORDER BY id"),
+                            (RowCallbackHandler) rs -> loaded.put(rs.getInt("id"), rs.getString("name"),
+                                    rs.getString("description")));
+                    index = loaded;
+                    searchIndex = loaded;
+                }
+            }
+        }
+
+        return index;
+    }
+
+    private List<Film> findByIds(List<Integer> ids, FilmView view) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Integer, Film> filmsById = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, ids.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query(FILMS_SQL + "WHERE f.id IN (" + placeholders + ")",
+                            new FilmMaker(), chunk.toArray())
+                    .forEach(film -> filmsById.put(film.getId(), film));
+        }
+
+        return loadLikesAndGenres(ids.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()), view);
+    }
+
+    private List<Film> loadLikesAndGenres(List<Film> films, FilmView view) {
+        for (int from = 0; from < films.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            List<Film> chunk = films.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, films.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            Object[] ids = chunk.stream().map(Film::getId).toArray();
+            attachLikesAndGenres(chunk, "WHERE film_id IN (" + placeholders + ") ", ids, view);
+        }
+
+        return films;
+    }
+
+    /*
+     Лайки и жанры для всей выборки читаются двумя запросами и раскладываются
+     по фильмам в памяти, вместо двух запросов на каждую строку films. Лайки читаются
+     по возрастанию user_id, чтобы в LikeMap они добавлялись в конец массива.
+     */
+    private void attachLikesAndGenres(List<Film> films, String filmIdFilter, Object[] ids, FilmView view) {
+        if (films.isEmpty()) {
+            return;
+        }
+        Map<Integer, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
+        }
+
+        if (view == FilmView.COUNT) {
+            films.forEach(film -> film.setLikes(null));
+        } else {
+            jdbcTemplate.query("SELECT fl.film_id, fl.user_id, fl.emoji " +
+                            "FROM films_likes fl " +
+                            filmIdFilter +
+                            "ORDER BY fl.film_id, fl.user_id",
+                    (RowCallbackHandler) rs -> {
+                        Film film = filmsById.get(rs.getInt("film_id"));
+                        if (film != null) {
+                            film.getLikes().put(rs.getInt("user_id"), Emoji.valueOf(rs.getString("emoji")));
+                        }
+                    }, ids);
+        }
+
+        jdbcTemplate.query("SELECT film_id, genres_id " +
+                        "FROM films_genres " +
+                        filmIdFilter +
+                        "ORDER BY film_id, genres_id",
+                (RowCallbackHandler) rs -> {
+                    Film film = filmsById.get(rs.getInt("film_id"));
+                    Genre genre = referenceData.findGenreById(rs.getInt("genres_id"));
+                    if (film != null && genre != null) {
+                        film.getGenres().add(genre);
+                    }
+                }, ids);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.IntPredicate;
+
+/*
+ Рейтинг фильмов по количеству лайков, который поддерживается при каждом
+ лайке/удалении лайка. Топ-N читается с головы отсортированного набора за O(N)
+ без пересчета всех лайков. При равном количестве лайков выше фильм с меньшим ID.
+ */
+public class FilmLeaderboard {
+    private final Map<Integer, Integer> likeCounts = new ConcurrentHashMap<>();
+    private final NavigableSet<Long> ranking = new ConcurrentSkipListSet<>();
+
+    public synchronized void put(Integer filmId, int likeCount) {
+        Integer previous = likeCounts.put(filmId, likeCount);
+
+        if (previous != null) {
+            ranking.remove(rankKey(filmId, previous));
+        }
+        ranking.add(rankKey(filmId, likeCount));
+    }
+
+    public synchronized void remove(Integer filmId) {
+        Integer previous = likeCounts.remove(filmId);
+
+        if (previous != null) {
+            ranking.remove(rankKey(filmId, previous));
+        }
+    }
+
+    public int likeCount(Integer filmId) {
+        return likeCounts.getOrDefault(filmId, 0);
+    }
+
+    public int size() {
+        return likeCounts.size();
+    }
+
+    public List<Integer> top(int count) {
+        return top(count, filmId -> true);
+    }
+
+    /*
+     Первые count фильмов рейтинга, подходящих под filter. Рейтинг читается с головы,
+     пока не наберется count фильмов.
+     */
+    public List<Integer> top(int count, IntPredicate filter) {
+        List<Integer> filmIds = new ArrayList<>(Math.min(count, likeCounts.size()));
+        Iterator<Long> iterator = ranking.descendingIterator();
+
+        while (iterator.hasNext() && filmIds.size() < count) {
+            int filmId = filmId(iterator.next());
+            if (filter.test(filmId)) {
+                filmIds.add(filmId);
+            }
+        }
+
+        return filmIds;
+    }
+
+    private static long rankKey(int filmId, int likeCount) {
+        return ((long) likeCount << 32) | (Integer.MAX_VALUE - filmId);
+    }
+
+    private static int filmId(long rankKey) {
+        return Integer.MAX_VALUE - (int) (rankKey & 0xFFFFFFFFL);
+    }
+}
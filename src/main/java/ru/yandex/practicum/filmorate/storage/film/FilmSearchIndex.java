@@ -0,0 +1,397 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.SearchField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+
+/*
+ Обратный индекс названий и описаний фильмов для поиска. Текст приводится к
+ нижнему регистру, ё заменяется на е, словом считается непрерывная
+ последовательность букв и цифр, поэтому кириллица и латиница разбираются
+ одинаково. Для каждого слова хранится отсортированный по ID список фильмов с
+ числом вхождений слова в название и в описание. Слова лежат в TreeMap, поэтому
+ слова с заданным началом - это один непрерывный отрезок карты.
+
+ В результат попадают фильмы, в которых найдено каждое слово запроса: целиком или,
+ если в слове запроса не меньше MIN_PREFIX_LENGTH символов, как начало слова.
+ Списки фильмов слов запроса пересекаются начиная с самого короткого.
+ */
+public class FilmSearchIndex {
+    private static final int MIN_PREFIX_LENGTH = 3;
+    private static final double TITLE_WEIGHT = 3;
+    private static final double DESCRIPTION_WEIGHT = 1;
+    private static final double PREFIX_WEIGHT = 0.5;
+    private static final double LIKE_WEIGHT = 0.2;
+    private static final int MAX_TERM_COUNT = 0xFFFF;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Postings> postings = new TreeMap<>();
+    private final Map<Integer, String[]> termsByFilm = new HashMap<>();
+
+    /*
+     Добавляет фильм в индекс или заменяет его прежние название и описание.
+     */
+    public void put(int filmId, String name, String description) {
+        Map<String, int[]> counts = new HashMap<>();
+        for (String term : tokenize(name)) {
+            counts.computeIfAbsent(term, key -> new int[2])[0]++;
+        }
+        for (String term : tokenize(description)) {
+            counts.computeIfAbsent(term, key -> new int[2])[1]++;
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeTerms(filmId);
+            String[] terms = new String[counts.size()];
+            int size = 0;
+            for (Map.Entry<String, int[]> count : counts.entrySet()) {
+                Map.Entry<String, Postings> entry = indexedTerm(count.getKey());
+                entry.getValue().put(filmId, pack(count.getValue()[0], count.getValue()[1]));
+                terms[size++] = entry.getKey();
+            }
+            termsByFilm.put(filmId, terms);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     ID найденных фильмов по убыванию итоговой оценки, при равной оценке - по
+     возрастанию ID. Оценка совпадения - сумма по словам запроса, для слова
+     берется лучшее из подходящих слов фильма: вес поля (название весомее
+     описания) с насыщением по числу вхождений, умноженный на редкость слова;
+     совпадение только по началу слова весит меньше. Итоговая оценка - оценка
+     совпадения, умноженная на (1 + LIKE_WEIGHT * ln(1 + лайков)), поэтому
+     популярность поднимает фильм, но не перевешивает заметно лучшее совпадение.
+     */
+    public List<Integer> search(String query, Set<SearchField> fields, int count, IntUnaryOperator likeCounts) {
+        List<String> words = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (words.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            List<WordTerms> wordTerms = new ArrayList<>(words.size());
+            for (String word : words) {
+                WordTerms terms = findTerms(word);
+                if (terms.terms.isEmpty()) {
+                    return new ArrayList<>();
+                }
+                wordTerms.add(terms);
+            }
+            wordTerms.sort((a, b) -> Long.compare(a.postingCount, b.postingCount));
+
+            Matches matches = collect(wordTerms.get(0), fields);
+            for (int i = 1; i < wordTerms.size() && matches.size > 0; i++) {
+                WordTerms terms = wordTerms.get(i);
+                matches = (long) matches.size * terms.terms.size() < terms.postingCount
+                        ? lookup(matches, terms, fields)
+                        : intersect(matches, collect(terms, fields));
+            }
+
+            return top(matches, count, likeCounts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean letter = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+
+        return tokens;
+    }
+
+    private WordTerms findTerms(String word) {
+        Map<String, Postings> matching;
+        if (word.length() >= MIN_PREFIX_LENGTH) {
+            matching = postings.subMap(word, true, word + Character.MAX_VALUE, false);
+        } else {
+            Postings exact = postings.get(word);
+            matching = exact == null ? Collections.emptyMap() : Collections.singletonMap(word, exact);
+        }
+
+        /*
+         Размер отрезка TreeMap считается перебором, поэтому отрезок проходится один раз.
+         */
+        double filmCount = termsByFilm.size();
+        List<Postings> terms = new ArrayList<>();
+        double[] weights = new double[16];
+        long postingCount = 0;
+        for (Map.Entry<String, Postings> entry : matching.entrySet()) {
+            Postings termPostings = entry.getValue();
+            double idf = Math.log(1 + filmCount / termPostings.size);
+            if (terms.size() == weights.length) {
+                weights = Arrays.copyOf(weights, weights.length * 2);
+            }
+            weights[terms.size()] = entry.getKey().length() == word.length() ? idf : idf * PREFIX_WEIGHT;
+            terms.add(termPostings);
+            postingCount += termPostings.size;
+        }
+
+        return new WordTerms(terms, weights, postingCount);
+    }
+
+    /*
+     Все фильмы, подходящие под одно слово запроса, с лучшей оценкой среди его
+     слов индекса, по возрастанию ID.
+     */
+    private static Matches collect(WordTerms word, Set<SearchField> fields) {
+        if (word.terms.size() == 1) {
+            Postings termPostings = word.terms.get(0);
+            Matches matches = new Matches(termPostings.size);
+            for (int i = 0; i < termPostings.size; i++) {
+                double score = word.weights[0] * fieldScore(termPostings.counts[i], fields);
+                if (score > 0) {
+                    matches.add(termPostings.filmIds[i], score);
+                }
+            }
+            return matches;
+        }
+
+        long[] keys = new long[(int) word.postingCount];
+        double[] scores = new double[keys.length];
+        int size = 0;
+        for (int t = 0; t < word.terms.size(); t++) {
+            Postings termPostings = word.terms.get(t);
+            for (int i = 0; i < termPostings.size; i++) {
+                double score = word.weights[t] * fieldScore(termPostings.counts[i], fields);
+                if (score > 0) {
+                    keys[size] = ((long) termPostings.filmIds[i] << 32) | size;
+                    scores[size] = score;
+                    size++;
+                }
+            }
+        }
+        Arrays.sort(keys, 0, size);
+
+        Matches matches = new Matches(size);
+        for (int i = 0; i < size; i++) {
+            int filmId = (int) (keys[i] >>> 32);
+            double score = scores[(int) keys[i]];
+            if (matches.size > 0 && matches.filmIds[matches.size - 1] == filmId) {
+                matches.scores[matches.size - 1] = Math.max(matches.scores[matches.size - 1], score);
+            } else {
+                matches.add(filmId, score);
+            }
+        }
+
+        return matches;
+    }
+
+    /*
+     Пересечение, когда найденных фильмов мало: каждый из них ищется в списках
+     слова двоичным поиском, без прохода по спискам целиком.
+     */
+    private static Matches lookup(Matches matches, WordTerms word, Set<SearchField> fields) {
+        Matches result = new Matches(matches.size);
+        for (int i = 0; i < matches.size; i++) {
+            double best = 0;
+            for (int t = 0; t < word.terms.size(); t++) {
+                Postings termPostings = word.terms.get(t);
+                int position = termPostings.indexOf(matches.filmIds[i]);
+                if (position >= 0) {
+                    best = Math.max(best, word.weights[t] * fieldScore(termPostings.counts[position], fields));
+                }
+            }
+            if (best > 0) {
+                result.add(matches.filmIds[i], matches.scores[i] + best);
+            }
+        }
+
+        return result;
+    }
+
+    private static Matches intersect(Matches left, Matches right) {
+        Matches result = new Matches(Math.min(left.size, right.size));
+        for (int i = 0, j = 0; i < left.size && j < right.size; ) {
+            if (left.filmIds[i] < right.filmIds[j]) {
+                i++;
+            } else if (left.filmIds[i] > right.filmIds[j]) {
+                j++;
+            } else {
+                result.add(left.filmIds[i], left.scores[i] + right.scores[j]);
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    private static List<Integer> top(Matches matches, int count, IntUnaryOperator likeCounts) {
+        double[] scores = new double[matches.size];
+        for (int i = 0; i < matches.size; i++) {
+            scores[i] = matches.scores[i] * (1 + LIKE_WEIGHT * Math.log1p(likeCounts.applyAsInt(matches.filmIds[i])));
+        }
+        PriorityQueue<Integer> heap = new PriorityQueue<>((a, b) -> scores[a] != scores[b]
+                ? Double.compare(scores[a], scores[b])
+                : Integer.compare(matches.filmIds[b], matches.filmIds[a]));
+        for (int i = 0; i < matches.size; i++) {
+            heap.add(i);
+            if (heap.size() > count) {
+                heap.poll();
+            }
+        }
+
+        List<Integer> filmIds = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            filmIds.add(matches.filmIds[heap.poll()]);
+        }
+        Collections.reverse(filmIds);
+
+        return filmIds;
+    }
+
+    /*
+     Насыщение по числу вхождений: повтор слова немного повышает оценку, но
+     десять повторов в описании не важнее одного слова в названии.
+     */
+    private static double fieldScore(int counts, Set<SearchField> fields) {
+        double score = 0;
+        int titleCount = counts >>> 16;
+        int descriptionCount = counts & MAX_TERM_COUNT;
+        if (titleCount > 0 && fields.contains(SearchField.TITLE)) {
+            score += TITLE_WEIGHT * titleCount / (titleCount + 1.0);
+        }
+        if (descriptionCount > 0 && fields.contains(SearchField.DESCRIPTION)) {
+            score += DESCRIPTION_WEIGHT * descriptionCount / (descriptionCount + 1.0);
+        }
+
+        return score;
+    }
+
+    private static int pack(int titleCount, int descriptionCount) {
+        return (Math.min(titleCount, MAX_TERM_COUNT) << 16) | Math.min(descriptionCount, MAX_TERM_COUNT);
+    }
+
+    /*
+     Запись карты для слова, созданная при необходимости. У фильмов хранится
+     строка-ключ карты, а не своя копия слова.
+     */
+    private Map.Entry<String, Postings> indexedTerm(String term) {
+        Map.Entry<String, Postings> entry = postings.ceilingEntry(term);
+        if (entry == null || !entry.getKey().equals(term)) {
+            postings.put(term, new Postings());
+            entry = postings.ceilingEntry(term);
+        }
+
+        return entry;
+    }
+
+    private void removeTerms(int filmId) {
+        String[] terms = termsByFilm.remove(filmId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Postings termPostings = postings.get(term);
+            if (termPostings != null && termPostings.remove(filmId) && termPostings.size == 0) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    private static class WordTerms {
+        private final List<Postings> terms;
+        private final double[] weights;
+        private final long postingCount;
+
+        private WordTerms(List<Postings> terms, double[] weights, long postingCount) {
+            this.terms = terms;
+            this.weights = weights;
+            this.postingCount = postingCount;
+        }
+    }
+
+    private static class Matches {
+        private final int[] filmIds;
+        private final double[] scores;
+        private int size;
+
+        private Matches(int capacity) {
+            filmIds = new int[capacity];
+            scores = new double[capacity];
+        }
+
+        private void add(int filmId, double score) {
+            filmIds[size] = filmId;
+            scores[size] = score;
+            size++;
+        }
+    }
+
+    /*
+     Фильмы одного слова по возрастанию ID и упакованные числа вхождений: в
+     старших 16 битах - в название, в младших - в описание. ID новых фильмов
+     больше прежних, поэтому добавление обычно идет в конец массива.
+     */
+    private static class Postings {
+        private int[] filmIds = new int[2];
+        private int[] counts = new int[2];
+        private int size;
+
+        private int indexOf(int filmId) {
+            return Arrays.binarySearch(filmIds, 0, size, filmId);
+        }
+
+        private void put(int filmId, int count) {
+            int position = size > 0 && filmIds[size - 1] < filmId ? -size - 1 : indexOf(filmId);
+            if (position >= 0) {
+                counts[position] = count;
+                return;
+            }
+            position = -position - 1;
+            if (size == filmIds.length) {
+                filmIds = Arrays.copyOf(filmIds, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            System.arraycopy(filmIds, position, filmIds, position + 1, size - position);
+            System.arraycopy(counts, position, counts, position + 1, size - position);
+            filmIds[position] = filmId;
+            counts[position] = count;
+            size++;
+        }
+
+        private boolean remove(int filmId) {
+            int position = indexOf(filmId);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(filmIds, position + 1, filmIds, position, size - position - 1);
+            System.arraycopy(counts, position + 1, counts, position, size - position - 1);
+            size--;
+
+            return true;
+        }
+    }
+}
@@ -1,28 +1,139 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.Emoji;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeBatchResult;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeResponse;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.ReactionResponse;
+import ru.yandex.practicum.filmorate.model.SearchField;
+import ru.yandex.practicum.filmorate.model.SortOrder;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 @Component
 public interface FilmStorage {
-    List<Film> findAll();
+    /*
+     Методы чтения с FilmView.COUNT не загружают лайки: у фильмов likes равно null,
+     а likeCount взят из счетчика.
+     */
+    List<Film> findAll(FilmView view);
 
-    Film findById(Integer id);
+    default List<Film> findAll() {
+        return findAll(FilmView.FULL);
+    }
+
+    List<Film> findPage(Integer afterId, int limit, SortOrder sort, FilmView view);
+
+    default List<Film> findPage(Integer afterId, int limit, SortOrder sort) {
+        return findPage(afterId, limit, sort, FilmView.FULL);
+    }
+
+    void streamAll(Consumer<Film> consumer);
+
+    Film findById(Integer id, FilmView view);
+
+    default Film findById(Integer id) {
+        return findById(id, FilmView.FULL);
+    }
+
+    Set<Integer> findExistingIds(Collection<Integer> ids);
 
     Film create(Film film);
 
+    /*
+     Создает фильмы одним пакетом. Результаты идут в порядке переданного списка,
+     index результата - позиция фильма в этом списке.
+     */
+    List<BatchItemResult> createAll(List<Film> films);
+
     Film update(Film film);
 
-    List<Film> topFilms(Integer count);
+    /*
+     Самые популярные фильмы. Если переданы genreId и (или) year, в список попадают
+     только фильмы с этим жанром и годом выпуска.
+     */
+    List<Film> topFilms(Integer count, Integer genreId, Integer year, FilmView view);
+
+    default List<Film> topFilms(Integer count, FilmView view) {
+        return topFilms(count, null, null, view);
+    }
+
+    default List<Film> topFilms(Integer count) {
+        return topFilms(count, FilmView.FULL);
+    }
+
+    /*
+     Фильмы с наибольшим числом реакций данного вида, по счетчикам реакций.
+     Фильмы без такой реакции в список не попадают. Фильтры genreId и year - как
+     у topFilms.
+     */
+    List<Film> topFilmsByReaction(Emoji emoji, Integer count, Integer genreId, Integer year, FilmView view);
+
+    default List<Film> topFilmsByReaction(Emoji emoji, Integer count, FilmView view) {
+        return topFilmsByReaction(emoji, count, null, null, view);
+    }
+
+    /*
+     Фильмы, которые понравились пользователям с похожими лайками и еще не оценены
+     пользователем, по убыванию веса рекомендации. Пустой список, если у
+     пользователя нет лайков.
+     */
+    List<Film> recommendations(Integer userId, Integer count, FilmView view);
+
+    /*
+     Фильмы, похожие на данный по пользователям с лайком и жанрам, из заранее
+     посчитанной таблицы соседей. Таблица обновляется refreshSimilarFilms.
+     */
+    List<Film> similarFilms(Integer filmId, Integer count, FilmView view);
+
+    /*
+     Пересчитывает соседей фильмов, у которых с прошлого вызова изменились лайки
+     или жанры, задачами в переданном пуле. Возвращает число пересчитанных фильмов.
+     */
+    int refreshSimilarFilms(ForkJoinPool pool);
+
+    /*
+     Поиск по словам в названии и (или) описании фильма. Найдены должны быть все
+     слова запроса, слово запроса подходит и как начало слова. Фильмы упорядочены
+     по совпадению с запросом с поправкой на число лайков.
+     */
+    List<Film> search(String query, Set<SearchField> fields, Integer count, FilmView view);
 
     Film addLike(Integer filmId, Integer userId);
 
     Film removeLike(Integer filmId, Integer userId);
 
+    /*
+     Лайк и его отмена без перечитывания фильма: повтор ничего не меняет, в ответе
+     статус операции и новое значение счетчика лайков. Фильм должен существовать.
+     */
+    LikeResponse addLikeAndCount(Integer filmId, Integer userId);
+
+    LikeResponse removeLikeAndCount(Integer filmId, Integer userId);
+
+    /*
+     Ставит реакцию пользователя на фильм или заменяет прежнюю. У пользователя
+     одна реакция на фильм; likeCount фильма считает только положительные
+     реакции (Emoji.isPositive), а удаление лайка удаляет реакцию любого вида.
+     */
+    ReactionResponse react(Integer filmId, Integer userId, Emoji emoji);
+
+    /*
+     Применяет события лайков к существующим фильмам и пользователям. Пара
+     (filmId, userId) должна встречаться в списке не больше одного раза.
+     */
+    LikeBatchResult applyLikes(List<LikeEvent> events);
+
     List<Genre> findAllGenres();
 
     Genre findGenreById(Integer id);
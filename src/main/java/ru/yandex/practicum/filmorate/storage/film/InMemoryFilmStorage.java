@@ -3,90 +3,341 @@ package ru.yandex.practicum.filmorate.storage.film;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.Emoji;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeBatchResult;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeMap;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeResponse;
+import ru.yandex.practicum.filmorate.model.LikeStatus;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.ReactionResponse;
+import ru.yandex.practicum.filmorate.model.SearchField;
+import ru.yandex.practicum.filmorate.model.SortOrder;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+/*
+ Хранилище безопасно для одновременной работы многих потоков: изменения лайков
+ выполняются внутри ConcurrentHashMap.compute, то есть под блокировкой только
+ своего фильма, и меняют карту лайков на месте под ее монитором. Наружу фильм
+ отдается копией, снятой под тем же монитором, поэтому читатели не видят карту
+ в промежуточном состоянии, а лайк не копирует всю карту. Счетчики реакций фильма
+ меняются там же, поэтому всегда соответствуют его карте лайков.
+ */
 @Slf4j
 @Component
 @Qualifier("mem")
 public class InMemoryFilmStorage implements FilmStorage {
-    private final Map<Integer, Film> films = new HashMap<>();
+    private final Map<Integer, Film> films = new ConcurrentHashMap<>();
+    private final NavigableSet<Integer> filmIds = new ConcurrentSkipListSet<>();
 
-    private final Map<Integer, Genre> genres = new HashMap<>();
+    private final Map<Integer, Genre> genres = new ConcurrentHashMap<>();
 
-    private final Map<Integer, Mpa> mpa = new HashMap<>();
-    private int id = 1;
+    private final Map<Integer, Mpa> mpa = new ConcurrentHashMap<>();
+
+    private final PopularFilms leaderboard = new PopularFilms();
+    private final ReactionLeaderboards reactionLeaderboards = new ReactionLeaderboards();
+    private final Map<Integer, int[]> reactionCounts = new ConcurrentHashMap<>();
+    private final LikeIndex likeIndex = new LikeIndex();
+    private final SimilarFilms similarFilms = new SimilarFilms(likeIndex);
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+    private final AtomicInteger id = new AtomicInteger(1);
 
     @Override
-    public List<Film> findAll() {
+    public List<Film> findAll(FilmView view) {
 
-        return new ArrayList<>(films.values());
+        return films.values().stream()
+                .map(film -> inView(film, view))
+                .collect(Collectors.toList());
     }
 
     @Override
-    public Film findById(Integer id) {
+    public List<Film> findPage(Integer afterId, int limit, SortOrder sort, FilmView view) {
+        NavigableSet<Integer> ids = sort == SortOrder.ASC ? filmIds : filmIds.descendingSet();
+        if (afterId != null) {
+            ids = ids.tailSet(afterId, false);
+        }
+
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .limit(limit)
+                .map(film -> inView(film, view))
+                .collect(Collectors.toList());
+    }
 
-        return films.get(id);
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        for (Integer filmId : filmIds) {
+            Film film = films.get(filmId);
+            if (film != null) {
+                consumer.accept(inView(film, FilmView.FULL));
+            }
+        }
+    }
+
+    @Override
+    public Film findById(Integer id, FilmView view) {
+        Film film = films.get(id);
+
+        return film == null ? null : inView(film, view);
+    }
+
+    @Override
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        Set<Integer> existing = new HashSet<>();
+        for (Integer filmId : ids) {
+            if (films.containsKey(filmId)) {
+                existing.add(filmId);
+            }
+        }
+
+        return existing;
     }
 
     @Override
     public Film create(Film film) {
-        film.setId(id++);
-        films.put(film.getId(), film);
+        film.setId(id.getAndIncrement());
+        Film copy = copyOf(film);
+        films.compute(film.getId(), (filmId, stored) -> {
+            recountReactions(filmId, copy.getLikes());
+            leaderboard.put(filmId, likeCount(filmId));
+            leaderboard.setAttributes(filmId, copy.getReleaseDate(), copy.getGenres());
+            likeIndex.replaceLikers(filmId, copy.getLikes().keySet());
+            similarFilms.setGenres(filmId, copy.getGenres());
+            searchIndex.put(filmId, copy.getName(), copy.getDescription());
+            return copy;
+        });
+        filmIds.add(film.getId());
 
         return film;
     }
 
+    @Override
+    public List<BatchItemResult> createAll(List<Film> films) {
+        List<BatchItemResult> results = new ArrayList<>(films.size());
+        for (int i = 0; i < films.size(); i++) {
+            results.add(BatchItemResult.created(i, create(films.get(i)).getId()));
+        }
+
+        return results;
+    }
+
     @Override
     public Film update(Film film) {
-        films.put(film.getId(), film);
+        Film copy = copyOf(film);
+        films.compute(film.getId(), (filmId, stored) -> {
+            recountReactions(filmId, copy.getLikes());
+            leaderboard.put(filmId, likeCount(filmId));
+            leaderboard.setAttributes(filmId, copy.getReleaseDate(), copy.getGenres());
+            likeIndex.replaceLikers(filmId, copy.getLikes().keySet());
+            similarFilms.setGenres(filmId, copy.getGenres());
+            searchIndex.put(filmId, copy.getName(), copy.getDescription());
+            return copy;
+        });
 
         return film;
     }
 
     @Override
-    public List<Film> topFilms(Integer count) {
+    public List<Film> topFilms(Integer count, Integer genreId, Integer year, FilmView view) {
 
-        return films.values().stream()
-                .collect(Collectors.toMap(Film::getId, f -> f.getLikes().size()))
-                .entrySet()
-                .stream()
-                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed())
-                .limit(count)
-                .map(f -> films.get(f.getKey()))
+        return leaderboard.top(count, genreId, year).stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(film -> inView(film, view))
                 .collect(Collectors.toList());
     }
 
     @Override
-    public Film addLike(Integer filmId, Integer userId) {
-        Film film = findById(filmId);
-        Map<Integer, Emoji> assessmentMap = film.getLikes();
+    public List<Film> topFilmsByReaction(Emoji emoji, Integer count, Integer genreId, Integer year, FilmView view) {
 
-        if (assessmentMap == null) {
-            assessmentMap = new HashMap<>();
-        }
+        return reactionLeaderboards.top(emoji, count, leaderboard.matches(genreId, year)).stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(film -> inView(film, view))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> recommendations(Integer userId, Integer count, FilmView view) {
+
+        return likeIndex.recommend(userId, count).stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(film -> inView(film, view))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> similarFilms(Integer filmId, Integer count, FilmView view) {
+
+        return similarFilms.similar(filmId, count).stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(film -> inView(film, view))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public int refreshSimilarFilms(ForkJoinPool pool) {
+
+        return similarFilms.refresh(pool);
+    }
+
+    @Override
+    public List<Film> search(String query, Set<SearchField> fields, Integer count, FilmView view) {
+
+        return searchIndex.search(query, fields, count, leaderboard::likeCount).stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(film -> inView(film, view))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Film addLike(Integer filmId, Integer userId) {
+        Film liked = films.computeIfPresent(filmId, (storedId, film) -> {
+            Map<Integer, Emoji> likes = film.getLikes();
+            synchronized (likes) {
+                if (!likes.containsKey(userId)) {
+                    setReaction(storedId, likes, userId, Emoji.LIKE);
+                    leaderboard.put(storedId, likeCount(storedId));
+                }
+            }
+            return film;
+        });
 
-        assessmentMap.put(userId, Emoji.LIKE);
-        film.setLikes(assessmentMap);
-        return films.get(filmId);
+        return liked == null ? null : inView(liked, FilmView.FULL);
     }
 
     @Override
     public Film removeLike(Integer filmId, Integer userId) {
-        Film film = findById(filmId);
-        Map<Integer, Emoji> assessmentMap = film.getLikes();
-        assessmentMap.remove(userId);
-        update(film);
+        Film unliked = films.computeIfPresent(filmId, (storedId, film) -> {
+            Map<Integer, Emoji> likes = film.getLikes();
+            synchronized (likes) {
+                if (setReaction(storedId, likes, userId, null) != null) {
+                    leaderboard.put(storedId, likeCount(storedId));
+                }
+            }
+            return film;
+        });
+
+        return unliked == null ? null : inView(unliked, FilmView.FULL);
+    }
+
+    @Override
+    public LikeResponse addLikeAndCount(Integer filmId, Integer userId) {
+        LikeStatus[] status = {LikeStatus.UNCHANGED};
+        int[] likeCount = new int[1];
+        films.computeIfPresent(filmId, (storedId, film) -> {
+            Map<Integer, Emoji> likes = film.getLikes();
+            synchronized (likes) {
+                if (!likes.containsKey(userId)) {
+                    setReaction(storedId, likes, userId, Emoji.LIKE);
+                    leaderboard.put(storedId, likeCount(storedId));
+                    status[0] = LikeStatus.ADDED;
+                }
+                likeCount[0] = likeCount(storedId);
+            }
+            return film;
+        });
+
+        return new LikeResponse(filmId, userId, status[0], likeCount[0]);
+    }
+
+    @Override
+    public LikeResponse removeLikeAndCount(Integer filmId, Integer userId) {
+        LikeStatus[] status = {LikeStatus.UNCHANGED};
+        int[] likeCount = new int[1];
+        films.computeIfPresent(filmId, (storedId, film) -> {
+            Map<Integer, Emoji> likes = film.getLikes();
+            synchronized (likes) {
+                if (setReaction(storedId, likes, userId, null) != null) {
+                    leaderboard.put(storedId, likeCount(storedId));
+                    status[0] = LikeStatus.REMOVED;
+                }
+                likeCount[0] = likeCount(storedId);
+            }
+            return film;
+        });
 
-        return films.get(filmId);
+        return new LikeResponse(filmId, userId, status[0], likeCount[0]);
+    }
+
+    @Override
+    public ReactionResponse react(Integer filmId, Integer userId, Emoji emoji) {
+        ReactionResponse[] response = new ReactionResponse[1];
+        films.computeIfPresent(filmId, (storedId, film) -> {
+            Map<Integer, Emoji> likes = film.getLikes();
+            synchronized (likes) {
+                Emoji previous = setReaction(storedId, likes, userId, emoji);
+                LikeStatus status = LikeStatus.UNCHANGED;
+                if (previous != emoji) {
+                    leaderboard.put(storedId, likeCount(storedId));
+                    status = previous == null ? LikeStatus.ADDED : LikeStatus.CHANGED;
+                }
+                response[0] = new ReactionResponse(storedId, userId, emoji, status, likeCount(storedId),
+                        reactionsOf(storedId));
+            }
+            return film;
+        });
+
+        return response[0];
+    }
+
+    /*
+     События группируются по фильму, чтобы блокировка фильма бралась и рейтинг
+     обновлялся один раз на пакет, а не на каждое событие.
+     */
+    @Override
+    public LikeBatchResult applyLikes(List<LikeEvent> events) {
+        Map<Integer, List<LikeEvent>> eventsByFilm = new LinkedHashMap<>();
+        for (LikeEvent event : events) {
+            eventsByFilm.computeIfAbsent(event.getFilmId(), filmId -> new ArrayList<>()).add(event);
+        }
+
+        int[] added = new int[1];
+        int[] removed = new int[1];
+        eventsByFilm.forEach((filmId, filmEvents) -> films.computeIfPresent(filmId, (storedId, film) -> {
+            Map<Integer, Emoji> likes = film.getLikes();
+            synchronized (likes) {
+                for (LikeEvent event : filmEvents) {
+                    if (event.getOp() == LikeOperation.LIKE) {
+                        if (!likes.containsKey(event.getUserId())) {
+                            setReaction(storedId, likes, event.getUserId(), Emoji.LIKE);
+                            added[0]++;
+                        }
+                    } else if (setReaction(storedId, likes, event.getUserId(), null) != null) {
+                        removed[0]++;
+                    }
+                }
+                leaderboard.put(storedId, likeCount(storedId));
+            }
+            return film;
+        }));
+
+        return new LikeBatchResult(events.size(), added[0], removed[0], 0);
     }
 
     @Override
@@ -108,4 +359,90 @@ public class InMemoryFilmStorage implements FilmStorage {
     public Mpa findMpaById(Integer id) {
         return mpa.get(id);
     }
+
+    private static Film copyOf(Film film) {
+        Film copy = film.withoutLikes();
+        copy.setLikes(new LikeMap(film.getLikes()));
+
+        return copy;
+    }
+
+    /*
+     Ставит (emoji != null) или удаляет реакцию пользователя в карте лайков и
+     поправляет счетчики реакций фильма и индекс лайков. Вызывается внутри compute
+     по этому фильму.
+     */
+    private Emoji setReaction(Integer filmId, Map<Integer, Emoji> likes, Integer userId, Emoji emoji) {
+        Emoji previous = emoji == null ? likes.remove(userId) : likes.put(userId, emoji);
+        if (previous != emoji) {
+            if (previous != null) {
+                countReaction(filmId, previous, -1);
+            }
+            if (emoji != null) {
+                countReaction(filmId, emoji, 1);
+            }
+            if (previous == null) {
+                likeIndex.add(filmId, userId);
+            } else if (emoji == null) {
+                likeIndex.remove(filmId, userId);
+            }
+        }
+
+        return previous;
+    }
+
+    private void countReaction(Integer filmId, Emoji emoji, int delta) {
+        int[] counts = reactionCounts.computeIfAbsent(filmId, id -> new int[Emoji.values().length]);
+        counts[emoji.ordinal()] += delta;
+        reactionLeaderboards.put(filmId, emoji, counts[emoji.ordinal()]);
+    }
+
+    private void recountReactions(Integer filmId, Map<Integer, Emoji> likes) {
+        int[] counts = new int[Emoji.values().length];
+        for (Emoji emoji : likes.values()) {
+            counts[emoji.ordinal()]++;
+        }
+        reactionCounts.put(filmId, counts);
+        for (Emoji emoji : Emoji.values()) {
+            reactionLeaderboards.put(filmId, emoji, counts[emoji.ordinal()]);
+        }
+    }
+
+    /*
+     Число лайков берется из счетчиков положительных реакций фильма, которые
+     меняются вместе с его картой лайков, а не из самой карты.
+     */
+    private int likeCount(Integer filmId) {
+        int[] counts = reactionCounts.get(filmId);
+        int likeCount = 0;
+        if (counts != null) {
+            for (Emoji emoji : Emoji.values()) {
+                if (emoji.isPositive()) {
+                    likeCount += counts[emoji.ordinal()];
+                }
+            }
+        }
+
+        return likeCount;
+    }
+
+    private Map<Emoji, Integer> reactionsOf(Integer filmId) {
+        int[] counts = reactionCounts.getOrDefault(filmId, new int[Emoji.values().length]);
+        Map<Emoji, Integer> reactions = new EnumMap<>(Emoji.class);
+        for (Emoji emoji : Emoji.values()) {
+            reactions.put(emoji, counts[emoji.ordinal()]);
+        }
+
+        return reactions;
+    }
+
+    /*
+     Копия фильма для ответа. Карта лайков копируется под ее монитором, под которым
+     ее меняют лайки, поэтому копия всегда согласована.
+     */
+    private Film inView(Film film, FilmView view) {
+        synchronized (film.getLikes()) {
+            return view == FilmView.COUNT ? film.withoutLikes(likeCount(film.getId())) : copyOf(film);
+        }
+    }
 }
@@ -0,0 +1,292 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ Обратный индекс лайков для рекомендаций: для фильма - отсортированный массив ID
+ пользователей с реакцией на него, для пользователя - отсортированный массив ID
+ фильмов. Вид реакции не важен, любая реакция считается лайком. Массивы растут с
+ запасом и меняются на месте под блокировкой записи, поэтому лайк популярного
+ фильма не копирует весь его список; рекомендации считаются под блокировкой чтения.
+ Фильмы с изменившимся списком лайков запоминаются для пересчета похожих фильмов.
+ */
+public class LikeIndex {
+    /*
+     Сколько лайков других пользователей просматривается при поиске похожих.
+     Фильмы пользователя перебираются от менее популярных к более популярным:
+     общий лайк редкого фильма говорит о сходстве вкусов больше, а самые
+     популярные фильмы при исчерпании лимита не просматриваются.
+     */
+    private static final int MAX_SCANNED_LIKES = 200_000;
+    private static final int MAX_NEIGHBOURS = 50;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, IntSet> likersByFilm = new HashMap<>();
+    private final Map<Integer, IntSet> filmsByUser = new HashMap<>();
+    private final Set<Integer> changedFilms = ConcurrentHashMap.newKeySet();
+
+    public void add(int filmId, int userId) {
+        lock.writeLock().lock();
+        try {
+            if (likersByFilm.computeIfAbsent(filmId, id -> new IntSet()).add(userId)) {
+                filmsByUser.computeIfAbsent(userId, id -> new IntSet()).add(filmId);
+                changedFilms.add(filmId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int filmId, int userId) {
+        lock.writeLock().lock();
+        try {
+            if (removeFrom(likersByFilm, filmId, userId)) {
+                removeFrom(filmsByUser, userId, filmId);
+                changedFilms.add(filmId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     Заменяет всех пользователей с лайком фильма, когда лайки фильма
+     перезаписываются целиком.
+     */
+    public void replaceLikers(int filmId, Collection<Integer> userIds) {
+        lock.writeLock().lock();
+        try {
+            IntSet previous = likersByFilm.remove(filmId);
+            if (previous != null) {
+                for (int i = 0; i < previous.size; i++) {
+                    removeFrom(filmsByUser, previous.values[i], filmId);
+                }
+            }
+            for (Integer userId : userIds) {
+                likersByFilm.computeIfAbsent(filmId, id -> new IntSet()).add(userId);
+                filmsByUser.computeIfAbsent(userId, id -> new IntSet()).add(filmId);
+            }
+            changedFilms.add(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     Находит до MAX_NEIGHBOURS пользователей с наибольшим числом общих лайков и
+     предлагает фильмы, которые понравились им, но еще не оценены пользователем.
+     Вес фильма - сумма общих лайков с соседями, которым он понравился; при равном
+     весе выше более популярный фильм, затем фильм с меньшим ID.
+     */
+    public List<Integer> recommend(int userId, int count) {
+        lock.readLock().lock();
+        try {
+            IntSet liked = filmsByUser.get(userId);
+            if (liked == null || liked.size == 0) {
+                return new ArrayList<>();
+            }
+
+            Map<Integer, int[]> overlaps = new HashMap<>();
+            int scanned = 0;
+            for (int filmId : filmsByPopularity(liked)) {
+                IntSet likers = likersByFilm.get(filmId);
+                if (scanned > 0 && scanned + likers.size > MAX_SCANNED_LIKES) {
+                    break;
+                }
+                for (int i = 0; i < likers.size; i++) {
+                    if (likers.values[i] != userId) {
+                        overlaps.computeIfAbsent(likers.values[i], id -> new int[1])[0]++;
+                    }
+                }
+                scanned += likers.size;
+            }
+
+            Map<Integer, int[]> scores = new HashMap<>();
+            for (Map.Entry<Integer, int[]> neighbour : topNeighbours(overlaps)) {
+                IntSet films = filmsByUser.get(neighbour.getKey());
+                for (int i = 0; i < films.size; i++) {
+                    if (!liked.contains(films.values[i])) {
+                        scores.computeIfAbsent(films.values[i], id -> new int[1])[0] += neighbour.getValue()[0];
+                    }
+                }
+            }
+
+            Comparator<Map.Entry<Integer, int[]>> byScore = Comparator
+                    .<Map.Entry<Integer, int[]>>comparingInt(entry -> entry.getValue()[0])
+                    .thenComparingInt(entry -> likersByFilm.get(entry.getKey()).size)
+                    .thenComparing(Map.Entry::getKey, Comparator.reverseOrder());
+            List<Integer> filmIds = new ArrayList<>();
+            for (Map.Entry<Integer, int[]> entry : top(scores, count, byScore)) {
+                filmIds.add(entry.getKey());
+            }
+
+            return filmIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int likeCount(int filmId) {
+        lock.readLock().lock();
+        try {
+            IntSet likers = likersByFilm.get(filmId);
+            return likers == null ? 0 : likers.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     Для каждого фильма, у которого есть общие с данным пользователи с лайком,
+     возвращает пару {общих пользователей, всего лайков фильма}. Если у этих
+     пользователей больше MAX_SCANNED_LIKES лайков, просматривается каждый
+     step-й из них, а число общих пользователей умножается на step.
+     */
+    public Map<Integer, int[]> coLikes(int filmId) {
+        lock.readLock().lock();
+        try {
+            IntSet likers = likersByFilm.get(filmId);
+            Map<Integer, int[]> counts = new HashMap<>();
+            if (likers == null) {
+                return counts;
+            }
+
+            long total = 0;
+            for (int i = 0; i < likers.size; i++) {
+                total += filmsByUser.get(likers.values[i]).size;
+            }
+            int step = (int) Math.max(1, (total + MAX_SCANNED_LIKES - 1) / MAX_SCANNED_LIKES);
+            for (int i = 0; i < likers.size; i += step) {
+                IntSet films = filmsByUser.get(likers.values[i]);
+                for (int j = 0; j < films.size; j++) {
+                    if (films.values[j] != filmId) {
+                        counts.computeIfAbsent(films.values[j], id -> new int[2])[0] += step;
+                    }
+                }
+            }
+            counts.forEach((otherId, count) -> count[1] = likersByFilm.get(otherId).size);
+
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     Забирает ID фильмов, лайки которых изменились с прошлого вызова.
+     */
+    public List<Integer> drainChangedFilms() {
+        List<Integer> filmIds = new ArrayList<>();
+        for (Iterator<Integer> iterator = changedFilms.iterator(); iterator.hasNext(); ) {
+            filmIds.add(iterator.next());
+            iterator.remove();
+        }
+
+        return filmIds;
+    }
+
+    private int[] filmsByPopularity(IntSet liked) {
+        long[] keys = new long[liked.size];
+        for (int i = 0; i < liked.size; i++) {
+            keys[i] = ((long) likersByFilm.get(liked.values[i]).size << 32) | (liked.values[i] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(keys);
+
+        int[] filmIds = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            filmIds[i] = (int) keys[i];
+        }
+
+        return filmIds;
+    }
+
+    private static List<Map.Entry<Integer, int[]>> topNeighbours(Map<Integer, int[]> overlaps) {
+        return top(overlaps, MAX_NEIGHBOURS, Comparator
+                .<Map.Entry<Integer, int[]>>comparingInt(entry -> entry.getValue()[0])
+                .thenComparing(Map.Entry::getKey, Comparator.reverseOrder()));
+    }
+
+    /*
+     Первые limit записей по убыванию comparator без сортировки всей карты.
+     */
+    private static List<Map.Entry<Integer, int[]>> top(Map<Integer, int[]> entries, int limit,
+                                                        Comparator<Map.Entry<Integer, int[]>> comparator) {
+        PriorityQueue<Map.Entry<Integer, int[]>> heap = new PriorityQueue<>(comparator);
+        for (Map.Entry<Integer, int[]> entry : entries.entrySet()) {
+            heap.add(entry);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+
+        List<Map.Entry<Integer, int[]>> result = new ArrayList<>(heap);
+        result.sort(comparator.reversed());
+
+        return result;
+    }
+
+    private static boolean removeFrom(Map<Integer, IntSet> index, int key, int value) {
+        IntSet values = index.get(key);
+        if (values == null || !values.remove(value)) {
+            return false;
+        }
+        if (values.size == 0) {
+            index.remove(key);
+        }
+
+        return true;
+    }
+
+    /*
+     Отсортированный массив без повторов. ID обычно приходят по возрастанию,
+     поэтому добавление в конец не сдвигает элементы.
+     */
+    private static class IntSet {
+        private int[] values = new int[4];
+        private int size;
+
+        private boolean contains(int value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        private boolean add(int value) {
+            int position = size > 0 && values[size - 1] < value ? size : Arrays.binarySearch(values, 0, size, value);
+            if (position < 0) {
+                position = -position - 1;
+            } else if (position < size) {
+                return false;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, position, values, position + 1, size - position);
+            values[position] = value;
+            size++;
+
+            return true;
+        }
+
+        private boolean remove(int value) {
+            int position = Arrays.binarySearch(values, 0, size, value);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(values, position + 1, values, position, size - position - 1);
+            size--;
+
+            return true;
+        }
+    }
+}
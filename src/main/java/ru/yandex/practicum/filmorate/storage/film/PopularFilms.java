@@ -0,0 +1,118 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/*
+ Рейтинги фильмов по числу лайков: общий, по каждому жанру и по каждому году
+ выпуска. Число лайков фильма переносится во все его рейтинги при каждом
+ изменении, поэтому топ по жанру или году читается с головы своего рейтинга, как
+ общий. При обоих фильтрах читается меньший из двух рейтингов, а фильмы
+ проверяются по второму признаку. Жанры и год фильма хранятся здесь же и
+ обновляются при создании и изменении фильма.
+ */
+public class PopularFilms {
+    private static final int[] NO_GENRES = new int[0];
+
+    private final FilmLeaderboard all = new FilmLeaderboard();
+    private final Map<Integer, FilmLeaderboard> byGenre = new ConcurrentHashMap<>();
+    private final Map<Integer, FilmLeaderboard> byYear = new ConcurrentHashMap<>();
+    private final Map<Integer, Attributes> attributes = new ConcurrentHashMap<>();
+
+    public synchronized void put(Integer filmId, int likeCount) {
+        all.put(filmId, likeCount);
+        Attributes filmAttributes = attributes.get(filmId);
+        if (filmAttributes != null) {
+            for (int genreId : filmAttributes.genreIds) {
+                board(byGenre, genreId).put(filmId, likeCount);
+            }
+            if (filmAttributes.year != null) {
+                board(byYear, filmAttributes.year).put(filmId, likeCount);
+            }
+        }
+    }
+
+    public synchronized void setAttributes(Integer filmId, LocalDate releaseDate, Collection<Genre> genres) {
+        Attributes filmAttributes = new Attributes(releaseDate == null ? null : releaseDate.getYear(),
+                genres == null ? NO_GENRES : genres.stream().mapToInt(Genre::getId).sorted().distinct().toArray());
+        Attributes previous = attributes.put(filmId, filmAttributes);
+        if (previous != null) {
+            for (int genreId : previous.genreIds) {
+                removeFrom(byGenre, genreId, filmId);
+            }
+            if (previous.year != null) {
+                removeFrom(byYear, previous.year, filmId);
+            }
+        }
+        put(filmId, all.likeCount(filmId));
+    }
+
+    public int likeCount(int filmId) {
+        return all.likeCount(filmId);
+    }
+
+    public List<Integer> top(int count) {
+        return all.top(count);
+    }
+
+    public List<Integer> top(int count, Integer genreId, Integer year) {
+        if (genreId == null && year == null) {
+            return all.top(count);
+        }
+        FilmLeaderboard genreBoard = genreId == null ? null : byGenre.get(genreId);
+        FilmLeaderboard yearBoard = year == null ? null : byYear.get(year);
+        if ((genreId != null && genreBoard == null) || (year != null && yearBoard == null)) {
+            return new ArrayList<>();
+        }
+        if (yearBoard == null || (genreBoard != null && genreBoard.size() <= yearBoard.size())) {
+            return genreBoard.top(count, matches(null, year));
+        }
+
+        return yearBoard.top(count, matches(genreId, null));
+    }
+
+    /*
+     Проверка фильма по жанру и году для рейтингов, которые хранятся отдельно,
+     например рейтингов реакций.
+     */
+    public IntPredicate matches(Integer genreId, Integer year) {
+        return filmId -> {
+            Attributes filmAttributes = attributes.get(filmId);
+            if (filmAttributes == null) {
+                return genreId == null && year == null;
+            }
+
+            return (genreId == null || Arrays.binarySearch(filmAttributes.genreIds, genreId) >= 0)
+                    && (year == null || year.equals(filmAttributes.year));
+        };
+    }
+
+    private static FilmLeaderboard board(Map<Integer, FilmLeaderboard> boards, Integer key) {
+        return boards.computeIfAbsent(key, id -> new FilmLeaderboard());
+    }
+
+    private static void removeFrom(Map<Integer, FilmLeaderboard> boards, Integer key, Integer filmId) {
+        FilmLeaderboard board = boards.get(key);
+        if (board != null) {
+            board.remove(filmId);
+        }
+    }
+
+    private static class Attributes {
+        private final Integer year;
+        private final int[] genreIds;
+
+        private Attributes(Integer year, int[] genreIds) {
+            this.year = year;
+            this.genreIds = genreIds;
+        }
+    }
+}
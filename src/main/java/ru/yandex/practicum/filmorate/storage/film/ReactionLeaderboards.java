@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.Emoji;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/*
+ Отдельный FilmLeaderboard на каждую реакцию. В рейтинг реакции попадают только
+ фильмы, у которых она есть: при нулевом счетчике фильм из него убирается.
+ */
+public class ReactionLeaderboards {
+    private final Map<Emoji, FilmLeaderboard> leaderboards;
+
+    public ReactionLeaderboards() {
+        Map<Emoji, FilmLeaderboard> boards = new EnumMap<>(Emoji.class);
+        for (Emoji emoji : Emoji.values()) {
+            boards.put(emoji, new FilmLeaderboard());
+        }
+        leaderboards = Collections.unmodifiableMap(boards);
+    }
+
+    public void put(Integer filmId, Emoji emoji, int count) {
+        if (count > 0) {
+            leaderboards.get(emoji).put(filmId, count);
+        } else {
+            leaderboards.get(emoji).remove(filmId);
+        }
+    }
+
+    public List<Integer> top(Emoji emoji, int count) {
+        return leaderboards.get(emoji).top(count);
+    }
+
+    public List<Integer> top(Emoji emoji, int count, IntPredicate filter) {
+        return leaderboards.get(emoji).top(count, filter);
+    }
+}
@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/*
+ Справочники жанров и MPA меняются крайне редко, поэтому читаются из базы один раз
+ при старте (или при первом обращении) и дальше отдаются из неизменяемого снимка.
+ После изменения справочников в базе нужно вызвать invalidate() или reload().
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReferenceDataCache {
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Snapshot snapshot;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reload() {
+        Map<Integer, Genre> genres = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM genres ORDER BY id",
+                (RowCallbackHandler) rs -> genres.put(rs.getInt("id"),
+                        new Genre(rs.getInt("id"), rs.getString("name"))));
+
+        Map<Integer, Mpa> mpa = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM mpa ORDER BY id",
+                (RowCallbackHandler) rs -> mpa.put(rs.getInt("id"),
+                        new Mpa(rs.getInt("id"), rs.getString("name"))));
+
+        snapshot = new Snapshot(Collections.unmodifiableMap(genres), Collections.unmodifiableMap(mpa));
+        log.debug("Загружены справочники: жанров {}, MPA {}", genres.size(), mpa.size());
+    }
+
+    public void invalidate() {
+        snapshot = null;
+        log.debug("Кэш справочников жанров и MPA сброшен");
+    }
+
+    public List<Genre> findAllGenres() {
+        return snapshot().genres.values().stream()
+                .map(genre -> new Genre(genre.getId(), genre.getName()))
+                .collect(Collectors.toList());
+    }
+
+    public Genre findGenreById(Integer id) {
+        Genre genre = snapshot().genres.get(id);
+
+        return genre == null ? null : new Genre(genre.getId(), genre.getName());
+    }
+
+    public List<Mpa> findAllMpa() {
+        return snapshot().mpa.values().stream()
+                .map(mpa -> new Mpa(mpa.getId(), mpa.getName()))
+                .collect(Collectors.toList());
+    }
+
+    public Mpa findMpaById(Integer id) {
+        Mpa mpa = snapshot().mpa.get(id);
+
+        return mpa == null ? null : new Mpa(mpa.getId(), mpa.getName());
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    reload();
+                }
+                current = snapshot;
+            }
+        }
+
+        return current;
+    }
+
+    private static final class Snapshot {
+        private final Map<Integer, Genre> genres;
+        private final Map<Integer, Mpa> mpa;
+
+        private Snapshot(Map<Integer, Genre> genres, Map<Integer, Mpa> mpa) {
+            this.genres = genres;
+            this.mpa = mpa;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ Таблица похожих фильмов: для каждого фильма до TOP_K соседей по убыванию
+ сходства. Сходство - косинусная мера множеств пользователей с лайком, умноженная
+ на (1 + GENRE_BOOST * доля общих жанров). Фильмы без общих пользователей с лайком
+ похожими не считаются.
+
+ Строка таблицы пересчитывается только для фильмов, у которых изменились лайки или
+ жанры; пересчет идет задачами fork-join по частям списка таких фильмов. Новое
+ сходство пересчитанного фильма сразу переносится и в строки его соседей, поэтому
+ их строки не приходится пересчитывать целиком. Строка фильма, которого еще нет в
+ таблице, считается при первом запросе.
+ */
+public class SimilarFilms {
+    private static final int TOP_K = 50;
+    private static final double GENRE_BOOST = 0.5;
+    private static final int FORK_THRESHOLD = 32;
+    private static final int[] NO_GENRES = new int[0];
+
+    private final LikeIndex likeIndex;
+    private final Map<Integer, int[]> genresByFilm = new ConcurrentHashMap<>();
+    private final Map<Integer, Neighbours> neighbours = new ConcurrentHashMap<>();
+    private final Set<Integer> changedGenres = ConcurrentHashMap.newKeySet();
+
+    public SimilarFilms(LikeIndex likeIndex) {
+        this.likeIndex = likeIndex;
+    }
+
+    public void setGenres(int filmId, Collection<Genre> genres) {
+        int[] genreIds = genres == null ? NO_GENRES : genres.stream().mapToInt(Genre::getId).sorted().distinct().toArray();
+        int[] previous = genresByFilm.put(filmId, genreIds);
+        if (previous != null && !Arrays.equals(previous, genreIds)) {
+            changedGenres.add(filmId);
+        }
+    }
+
+    public List<Integer> similar(int filmId, int count) {
+        Neighbours row = neighbours.get(filmId);
+        if (row == null) {
+            row = recompute(filmId);
+        }
+
+        List<Integer> filmIds = new ArrayList<>(Math.min(count, row.filmIds.length));
+        for (int i = 0; i < row.filmIds.length && filmIds.size() < count; i++) {
+            filmIds.add(row.filmIds[i]);
+        }
+
+        return filmIds;
+    }
+
+    /*
+     Пересчитывает строки фильмов, у которых с прошлого вызова изменились лайки или
+     жанры, и возвращает их число.
+     */
+    public int refresh(ForkJoinPool pool) {
+        Set<Integer> changed = new HashSet<>(likeIndex.drainChangedFilms());
+        for (Iterator<Integer> iterator = changedGenres.iterator(); iterator.hasNext(); ) {
+            changed.add(iterator.next());
+            iterator.remove();
+        }
+        if (!changed.isEmpty()) {
+            int[] filmIds = changed.stream().mapToInt(Integer::intValue).toArray();
+            pool.invoke(new RefreshTask(filmIds, 0, filmIds.length));
+        }
+
+        return changed.size();
+    }
+
+    private Neighbours recompute(int filmId) {
+        Map<Integer, int[]> coLikes = likeIndex.coLikes(filmId);
+        int likeCount = likeIndex.likeCount(filmId);
+        int[] genres = genresOf(filmId);
+
+        int[] filmIds = new int[coLikes.size()];
+        double[] scores = new double[coLikes.size()];
+        int size = 0;
+        for (Map.Entry<Integer, int[]> entry : coLikes.entrySet()) {
+            filmIds[size] = entry.getKey();
+            scores[size] = similarity(likeCount, entry.getValue(), genres, genresOf(entry.getKey()));
+            size++;
+        }
+        Neighbours row = Neighbours.top(filmIds, scores, size);
+
+        /*
+         Сходство симметрично: соседям из новой и прежней строки передается новое
+         значение, нулевое убирает фильм из строки соседа.
+         */
+        Neighbours previous = neighbours.put(filmId, row);
+        Set<Integer> related = new HashSet<>();
+        for (int neighbourId : row.filmIds) {
+            related.add(neighbourId);
+        }
+        if (previous != null) {
+            for (int neighbourId : previous.filmIds) {
+                related.add(neighbourId);
+            }
+        }
+        for (Integer neighbourId : related) {
+            int[] counts = coLikes.get(neighbourId);
+            double score = counts == null ? 0 : similarity(likeCount, counts, genres, genresOf(neighbourId));
+            neighbours.computeIfPresent(neighbourId, (id, neighbourRow) -> neighbourRow.with(filmId, score));
+        }
+
+        return row;
+    }
+
+    private int[] genresOf(int filmId) {
+        return genresByFilm.getOrDefault(filmId, NO_GENRES);
+    }
+
+    private static double similarity(int likeCount, int[] coLikes, int[] genres, int[] otherGenres) {
+        int otherLikeCount = coLikes[1];
+        if (likeCount == 0 || otherLikeCount == 0) {
+            return 0;
+        }
+        int shared = Math.min(coLikes[0], Math.min(likeCount, otherLikeCount));
+        double cosine = shared / Math.sqrt((double) likeCount * otherLikeCount);
+
+        return cosine * (1 + GENRE_BOOST * jaccard(genres, otherGenres));
+    }
+
+    private static double jaccard(int[] genres, int[] otherGenres) {
+        int shared = 0;
+        for (int i = 0, j = 0; i < genres.length && j < otherGenres.length; ) {
+            if (genres[i] < otherGenres[j]) {
+                i++;
+            } else if (genres[i] > otherGenres[j]) {
+                j++;
+            } else {
+                shared++;
+                i++;
+                j++;
+            }
+        }
+        int union = genres.length + otherGenres.length - shared;
+
+        return union == 0 ? 0 : (double) shared / union;
+    }
+
+    private class RefreshTask extends RecursiveAction {
+        private final int[] filmIds;
+        private final int from;
+        private final int to;
+
+        private RefreshTask(int[] filmIds, int from, int to) {
+            this.filmIds = filmIds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FORK_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    recompute(filmIds[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RefreshTask(filmIds, from, middle), new RefreshTask(filmIds, middle, to));
+        }
+    }
+
+    /*
+     Неизменяемая строка таблицы: ID соседей и их сходство по убыванию сходства,
+     при равном сходстве - по возрастанию ID.
+     */
+    private static class Neighbours {
+        private final int[] filmIds;
+        private final double[] scores;
+
+        private Neighbours(int[] filmIds, double[] scores) {
+            this.filmIds = filmIds;
+            this.scores = scores;
+        }
+
+        private static Neighbours top(int[] filmIds, double[] scores, int size) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> scores[a] != scores[b]
+                    ? Double.compare(scores[b], scores[a])
+                    : Integer.compare(filmIds[a], filmIds[b]));
+
+            int length = 0;
+            while (length < Math.min(size, TOP_K) && scores[order[length]] > 0) {
+                length++;
+            }
+            int[] topIds = new int[length];
+            double[] topScores = new double[length];
+            for (int i = 0; i < length; i++) {
+                topIds[i] = filmIds[order[i]];
+                topScores[i] = scores[order[i]];
+            }
+
+            return new Neighbours(topIds, topScores);
+        }
+
+        /*
+         Копия строки, в которой сходство с фильмом filmId заменено на score.
+         */
+        private Neighbours with(int filmId, double score) {
+            int[] ids = Arrays.copyOf(filmIds, filmIds.length + 1);
+            double[] values = Arrays.copyOf(scores, scores.length + 1);
+            int size = 0;
+            for (int i = 0; i < filmIds.length; i++) {
+                if (filmIds[i] != filmId) {
+                    ids[size] = filmIds[i];
+                    values[size] = scores[i];
+                    size++;
+                }
+            }
+            ids[size] = filmId;
+            values[size] = score;
+
+            return top(ids, values, size + 1);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+/*
+ Граф дружбы в памяти для подсказок друзей. Ребро inviter -> invitee соответствует
+ строке таблицы friends, поэтому друзья пользователя - его исходящие ребра, как в
+ findFriendsById. Ребра хранятся в формате CSR: один массив соседей всех
+ пользователей, отсортированных по ID пользователя, и массив смещений, где
+ начинается строка каждого пользователя. Для подсказок нужны и входящие ребра,
+ они хранятся вторым таким же графом.
+
+ CSR не меняется на месте. Новая строка измененного пользователя целиком кладется в
+ накладку и при чтении заменяет строку CSR; когда измененных пользователей
+ становится много, накладка вливается в новый CSR.
+ */
+public class FriendGraph {
+    private static final int MIN_COMPACT_THRESHOLD = 10_000;
+    private static final int[] NO_FRIENDS = new int[0];
+
+    private final Direction friends;
+    private final Direction friendedBy;
+    private volatile int maxUserId;
+
+    public FriendGraph(int[] inviters, int[] invitees) {
+        friends = new Direction(Csr.build(inviters, invitees));
+        friendedBy = new Direction(Csr.build(invitees, inviters));
+        for (int i = 0; i < inviters.length; i++) {
+            maxUserId = Math.max(maxUserId, Math.max(inviters[i], invitees[i]));
+        }
+    }
+
+    public synchronized void add(int inviter, int invitee) {
+        maxUserId = Math.max(maxUserId, Math.max(inviter, invitee));
+        friends.add(inviter, invitee);
+        friendedBy.add(invitee, inviter);
+    }
+
+    public synchronized void remove(int inviter, int invitee) {
+        friends.remove(inviter, invitee);
+        friendedBy.remove(invitee, inviter);
+    }
+
+    public List<Integer> suggest(int userId, int count) {
+        return suggest(userId, count, maxUserId, friends::forEach, friendedBy::forEach);
+    }
+
+    /*
+     Кандидаты - пользователи, у которых есть общие друзья с данным: для каждого его
+     друга перебираются те, у кого этот друг тоже в друзьях. Число общих друзей
+     считается в хеш-таблице на массивах int, без упаковки чисел; ее размер зависит
+     от числа кандидатов, а не от максимального ID пользователя. Сам пользователь и
+     его друзья помечены отрицательным значением и в кандидаты не попадают. Кандидаты упорядочены по убыванию числа общих друзей, затем по ID.
+     Пользователи, появившиеся в графе во время подсчета, пропускаются.
+     */
+    public static List<Integer> suggest(int userId, int count, int maxUserId,
+                                        Adjacency friends, Adjacency friendedBy) {
+        if (userId < 0 || userId > maxUserId) {
+            return new ArrayList<>();
+        }
+        MutualCounter counter = new MutualCounter(maxUserId);
+        counter.exclude(userId);
+        friends.forEach(userId, counter::exclude);
+        friends.forEach(userId, friendId -> friendedBy.forEach(friendId, counter));
+
+        PriorityQueue<Long> top = new PriorityQueue<>();
+        for (int i = 0; i < counter.userIds.length; i++) {
+            int candidate = counter.userIds[i];
+            if (candidate == MutualCounter.FREE || counter.mutual[i] <= 0) {
+                continue;
+            }
+            long key = ((long) counter.mutual[i] << 32) | (Integer.MAX_VALUE - candidate);
+            if (top.size() < count) {
+                top.add(key);
+            } else if (key > top.peek()) {
+                top.poll();
+                top.add(key);
+            }
+        }
+
+        List<Integer> userIds = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            userIds.add(Integer.MAX_VALUE - (int) (top.poll() & 0xFFFFFFFFL));
+        }
+        Collections.reverse(userIds);
+
+        return userIds;
+    }
+
+    @FunctionalInterface
+    public interface Adjacency {
+        void forEach(int userId, IntConsumer consumer);
+    }
+
+    /*
+     Открытая адресация с линейным пробированием: userIds[i] - ID пользователя в
+     ячейке i, mutual[i] - его число общих друзей. Таблица увеличивается вдвое, когда
+     заполнена наполовину.
+     */
+    private static class MutualCounter implements IntConsumer {
+        private static final int FREE = -1;
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final int maxUserId;
+        private int[] userIds = newUserIds(INITIAL_CAPACITY);
+        private int[] mutual = new int[INITIAL_CAPACITY];
+        private int size;
+
+        private MutualCounter(int maxUserId) {
+            this.maxUserId = maxUserId;
+        }
+
+        private void exclude(int userId) {
+            if (userId <= maxUserId) {
+                int i = slot(userId);
+                mutual[i] = Integer.MIN_VALUE;
+            }
+        }
+
+        @Override
+        public void accept(int candidate) {
+            if (candidate <= maxUserId) {
+                int i = slot(candidate);
+                mutual[i]++;
+            }
+        }
+
+        /*
+         Может увеличить таблицу и заменить mutual, поэтому ячейку нужно получить
+         до обращения к массиву.
+         */
+        private int slot(int userId) {
+            int mask = userIds.length - 1;
+            int i = hash(userId) & mask;
+            while (userIds[i] != FREE) {
+                if (userIds[i] == userId) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            if (size * 2 >= userIds.length) {
+                grow();
+                return slot(userId);
+            }
+            userIds[i] = userId;
+            size++;
+
+            return i;
+        }
+
+        private void grow() {
+            int[] oldUserIds = userIds;
+            int[] oldMutual = mutual;
+            userIds = newUserIds(oldUserIds.length * 2);
+            mutual = new int[oldUserIds.length * 2];
+            int mask = userIds.length - 1;
+            for (int j = 0; j < oldUserIds.length; j++) {
+                if (oldUserIds[j] == FREE) {
+                    continue;
+                }
+                int i = hash(oldUserIds[j]) & mask;
+                while (userIds[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                userIds[i] = oldUserIds[j];
+                mutual[i] = oldMutual[j];
+            }
+        }
+
+        private static int hash(int userId) {
+            int h = userId * 0x9E3779B9;
+
+            return h ^ (h >>> 16);
+        }
+
+        private static int[] newUserIds(int capacity) {
+            int[] userIds = new int[capacity];
+            Arrays.fill(userIds, FREE);
+
+            return userIds;
+        }
+    }
+
+    /*
+     Ребра одного направления: CSR и накладка из строк измененных пользователей.
+     Изменения идут под блокировкой графа, чтение - без блокировок.
+     */
+    private static class Direction {
+        private volatile Csr csr;
+        private final Map<Integer, int[]> overlay = new ConcurrentHashMap<>();
+
+        private Direction(Csr csr) {
+            this.csr = csr;
+        }
+
+        private void forEach(int userId, IntConsumer consumer) {
+            int[] row = overlay.get(userId);
+            if (row != null) {
+                for (int friendId : row) {
+                    consumer.accept(friendId);
+                }
+                return;
+            }
+            Csr current = csr;
+            if (userId + 1 < current.offsets.length) {
+                for (int i = current.offsets[userId]; i < current.offsets[userId + 1]; i++) {
+                    consumer.accept(current.targets[i]);
+                }
+            }
+        }
+
+        private void add(int userId, int friendId) {
+            int[] row = row(userId);
+            int position = Arrays.binarySearch(row, friendId);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            int[] result = new int[row.length + 1];
+            System.arraycopy(row, 0, result, 0, position);
+            result[position] = friendId;
+            System.arraycopy(row, position, result, position + 1, row.length - position);
+            update(userId, result);
+        }
+
+        private void remove(int userId, int friendId) {
+            int[] row = row(userId);
+            int position = Arrays.binarySearch(row, friendId);
+            if (position < 0) {
+                return;
+            }
+            int[] result = new int[row.length - 1];
+            System.arraycopy(row, 0, result, 0, position);
+            System.arraycopy(row, position + 1, result, position, row.length - position - 1);
+            update(userId, result);
+        }
+
+        private int[] row(int userId) {
+            int[] row = overlay.get(userId);
+            if (row != null) {
+                return row;
+            }
+            Csr current = csr;
+
+            return userId + 1 < current.offsets.length
+                    ? Arrays.copyOfRange(current.targets, current.offsets[userId], current.offsets[userId + 1])
+                    : NO_FRIENDS;
+        }
+
+        private void update(int userId, int[] row) {
+            overlay.put(userId, row);
+            if (overlay.size() > Math.max(MIN_COMPACT_THRESHOLD, csr.offsets.length / 8)) {
+                compact();
+            }
+        }
+
+        /*
+         Новый CSR публикуется раньше, чем очищается накладка, а строки накладки
+         совпадают со строками нового CSR, поэтому читатель видит верные данные в
+         любой момент.
+         */
+        private void compact() {
+            Csr current = csr;
+            int vertexCount = current.offsets.length - 1;
+            for (Integer userId : overlay.keySet()) {
+                vertexCount = Math.max(vertexCount, userId + 1);
+            }
+
+            int[] offsets = new int[vertexCount + 1];
+            for (int userId = 0; userId < vertexCount; userId++) {
+                offsets[userId + 1] = offsets[userId] + degree(current, userId);
+            }
+            int[] targets = new int[offsets[vertexCount]];
+            for (int userId = 0; userId < vertexCount; userId++) {
+                int[] row = overlay.get(userId);
+                if (row != null) {
+                    System.arraycopy(row, 0, targets, offsets[userId], row.length);
+                } else if (userId + 1 < current.offsets.length) {
+                    System.arraycopy(current.targets, current.offsets[userId], targets, offsets[userId],
+                            current.offsets[userId + 1] - current.offsets[userId]);
+                }
+            }
+
+            csr = new Csr(offsets, targets);
+            overlay.clear();
+        }
+
+        private int degree(Csr current, int userId) {
+            int[] row = overlay.get(userId);
+            if (row != null) {
+                return row.length;
+            }
+
+            return userId + 1 < current.offsets.length ? current.offsets[userId + 1] - current.offsets[userId] : 0;
+        }
+    }
+
+    private static class Csr {
+        private final int[] offsets;
+        private final int[] targets;
+
+        private Csr(int[] offsets, int[] targets) {
+            this.offsets = offsets;
+            this.targets = targets;
+        }
+
+        /*
+         Строит CSR по списку ребер from[i] -> to[i] подсчетом степеней, без сортировки
+         всех ребер; соседи внутри строки сортируются отдельно.
+         */
+        private static Csr build(int[] from, int[] to) {
+            int vertexCount = 0;
+            for (int userId : from) {
+                vertexCount = Math.max(vertexCount, userId + 1);
+            }
+
+            int[] offsets = new int[vertexCount + 1];
+            for (int userId : from) {
+                offsets[userId + 1]++;
+            }
+            for (int userId = 0; userId < vertexCount; userId++) {
+                offsets[userId + 1] += offsets[userId];
+            }
+            int[] targets = new int[from.length];
+            int[] next = Arrays.copyOf(offsets, vertexCount);
+            for (int i = 0; i < from.length; i++) {
+                targets[next[from[i]]++] = to[i];
+            }
+            for (int userId = 0; userId < vertexCount; userId++) {
+                Arrays.sort(targets, offsets[userId], offsets[userId + 1]);
+            }
+
+            return new Csr(offsets, targets);
+        }
+    }
+}
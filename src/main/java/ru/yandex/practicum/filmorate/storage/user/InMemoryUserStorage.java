@@ -6,33 +6,73 @@ import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.IdPassingException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Friends;
+import ru.yandex.practicum.filmorate.model.SortOrder;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/*
+ Друзья хранятся списками смежности: для каждого пользователя отсортированный
+ массив ID его друзей. Массив не меняется на месте, а заменяется новым, поэтому
+ чтение идет без блокировок, а общие друзья - это пересечение двух
+ отсортированных массивов.
+ */
 @Slf4j
 @Component
 @Qualifier("mem")
 public class InMemoryUserStorage implements UserStorage {
-    private final Map<Integer, User> users = new HashMap<>();
-    private int id = 1;
-    private final Map<Friends, Boolean> allFriends = new HashMap<>();
+    private static final int[] NO_FRIENDS = new int[0];
+
+    private final NavigableMap<Integer, User> users = new ConcurrentSkipListMap<>();
+    private final AtomicInteger id = new AtomicInteger(1);
+    private final Map<Integer, int[]> friendIds = new ConcurrentHashMap<>();
 
     @Override
     public List<User> findAll() {
         return new ArrayList<>(users.values());
     }
 
+    @Override
+    public List<User> findPage(Integer afterId, int limit, SortOrder sort) {
+        NavigableMap<Integer, User> page = sort == SortOrder.ASC ? users : users.descendingMap();
+        if (afterId != null) {
+            page = page.tailMap(afterId, false);
+        }
+
+        List<User> result = new ArrayList<>(limit);
+        for (User user : page.values()) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(user);
+        }
+
+        return result;
+    }
+
     @Override
     public User findById(Integer id) {
 
         return users.get(id);
     }
 
+    @Override
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        Set<Integer> existing = new HashSet<>();
+        for (Integer userId : ids) {
+            if (users.containsKey(userId)) {
+                existing.add(userId);
+            }
+        }
+
+        return existing;
+    }
+
     public User create(User user) {
-        user.setId(id++);
+        user.setId(id.getAndIncrement());
         users.put(user.getId(), user);
 
         return user;
@@ -45,23 +85,27 @@ public class InMemoryUserStorage implements UserStorage {
     }
 
     @Override
-    public Friends addFriends(Integer invitor, Integer invitee) {
-        Friends friends = new Friends(invitor, invitee);
-        if (allFriends.put(friends, true) != null) {
+    public synchronized Friends addFriends(Integer invitor, Integer invitee) {
+        if (Arrays.binarySearch(friendsOf(invitor), invitee) >= 0) {
             log.error("Пользователи: " + users.get(invitor) + " и " + users.get(invitee) +
                     "  уже являются друзьями");
             throw new ValidationException("Пользователи: " + users.get(invitor) +
                     " и " + users.get(invitee) + "  уже являются друзьями");
         }
-        return friends;
+
+        friendIds.put(invitor, withFriend(friendsOf(invitor), invitee));
+        friendIds.put(invitee, withFriend(friendsOf(invitee), invitor));
+
+        return new Friends(invitor, invitee);
     }
 
     @Override
-    public Friends deleteFriends(Integer invitor, Integer invitee) {
-        Friends friends = new Friends(invitor, invitee);
-        if (allFriends.remove(friends) != null) {
+    public synchronized Friends deleteFriends(Integer invitor, Integer invitee) {
+        if (Arrays.binarySearch(friendsOf(invitor), invitee) >= 0) {
+            friendIds.put(invitor, withoutFriend(friendsOf(invitor), invitee));
+            friendIds.put(invitee, withoutFriend(friendsOf(invitee), invitor));
             log.debug("Пользователи с ID {}, {} удалены из друзей: ", invitor, invitee);
-            return friends;
+            return new Friends(invitor, invitee);
         } else {
             log.error("Друзей с ID {}, {} не существует", invitor, invitee);
             throw new IdPassingException("Не существует  друзей с ID :" +
@@ -70,43 +114,79 @@ public class InMemoryUserStorage implements UserStorage {
     }
 
     public List<User> findFriendsById(Integer id) {
-        ;
-        return allFriends.keySet().stream()
-                .filter(friends -> friends.getInviter().equals(id)
-                        | friends.getInvitee().equals(id))
-                .map(friends -> {
-                    if (friends.getInviter().equals(id)) {
-                        return findById(friends.getInvitee());
-                    } else {
-                        return findById(friends.getInviter());
-                    }
-                })
-                .sorted(Comparator.comparingInt(User::getId))
-                .collect(Collectors.toList());
+        int[] friends = friendsOf(id);
+
+        return toUsers(friends, friends.length);
     }
 
     public List<User> findMutualFriendsByTwoIds(Integer id, Integer friendId) {
-        Friends friends = new Friends(id, friendId);
-
-        return allFriends.keySet().stream()
-                .filter(f -> (f.getInviter().equals(id) || f.getInvitee().equals(id))
-                        || (f.getInviter().equals(friendId) || f.getInvitee().equals(friendId)))
-                .filter(f -> !f.equals(friends))
-                .map(f -> {
-                    if (f.getInviter().equals(id) || f.getInviter().equals(friendId)) {
-                        return findById(f.getInvitee());
-                    } else {
-                        return findById(f.getInviter());
-                    }
-                })
-                .collect(Collectors.toList())
-                .stream()
-                .collect(Collectors.groupingBy(Function.identity()))
-                .entrySet()
-                .stream()
-                .filter(e -> e.getValue().size() == 2)
-                .map(Map.Entry::getKey)
-                .sorted(Comparator.comparingInt(User::getId))
-                .collect(Collectors.toList());
+        int[] friends = friendsOf(id);
+        int[] otherFriends = friendsOf(friendId);
+        int[] mutual = new int[Math.min(friends.length, otherFriends.length)];
+        int size = 0;
+
+        for (int i = 0, j = 0; i < friends.length && j < otherFriends.length; ) {
+            if (friends[i] < otherFriends[j]) {
+                i++;
+            } else if (friends[i] > otherFriends[j]) {
+                j++;
+            } else {
+                mutual[size++] = friends[i];
+                i++;
+                j++;
+            }
+        }
+
+        return toUsers(mutual, size);
+    }
+
+    /*
+     Дружба здесь взаимная, поэтому одни и те же списки смежности служат и
+     исходящими, и входящими ребрами графа.
+     */
+    @Override
+    public List<User> findFriendSuggestions(Integer id, int count) {
+        FriendGraph.Adjacency friends = (userId, consumer) -> {
+            for (int friendId : friendsOf(userId)) {
+                consumer.accept(friendId);
+            }
+        };
+        int[] suggested = FriendGraph.suggest(id, count, this.id.get() - 1, friends, friends).stream()
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        return toUsers(suggested, suggested.length);
+    }
+
+    private int[] friendsOf(Integer id) {
+        return friendIds.getOrDefault(id, NO_FRIENDS);
+    }
+
+    private List<User> toUsers(int[] ids, int size) {
+        List<User> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(findById(ids[i]));
+        }
+
+        return result;
+    }
+
+    private static int[] withFriend(int[] ids, int friendId) {
+        int position = -Arrays.binarySearch(ids, friendId) - 1;
+        int[] result = new int[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, position);
+        result[position] = friendId;
+        System.arraycopy(ids, position, result, position + 1, ids.length - position);
+
+        return result;
+    }
+
+    private static int[] withoutFriend(int[] ids, int friendId) {
+        int position = Arrays.binarySearch(ids, friendId);
+        int[] result = new int[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, position);
+        System.arraycopy(ids, position + 1, result, position, ids.length - position - 1);
+
+        return result;
     }
 }
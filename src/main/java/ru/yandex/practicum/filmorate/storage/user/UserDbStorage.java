@@ -4,28 +4,57 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dao.UserMaker;
 import ru.yandex.practicum.filmorate.exception.IdPassingException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Friends;
+import ru.yandex.practicum.filmorate.model.SortOrder;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 @Slf4j
 @Component
 @Qualifier("db")
 @RequiredArgsConstructor
 public class UserDbStorage implements UserStorage {
+    private static final int IN_CLAUSE_CHUNK_SIZE = 1000;
+
     private final JdbcTemplate jdbcTemplate;
 
+    private volatile FriendGraph friendGraph;
+
     @Override
     public List<User> findAll() {
         return jdbcTemplate.query("SELECT * FROM users",
                 new UserMaker());
     }
 
+    @Override
+    public List<User> findPage(Integer afterId, int limit, SortOrder sort) {
+        String sql = "SELECT * FROM users " +
+                (afterId == null ? "" : (sort == SortOrder.ASC ? "WHERE id > ? " : "WHERE id < ? ")) +
+                "ORDER BY id " + sort.name() + " " +
+                "LIMIT ?";
+        Object[] args = afterId == null ? new Object[]{limit} : new Object[]{afterId, limit};
+
+        return jdbcTemplate.query(sql, new UserMaker(), args);
+    }
+
     @Override
     public User findById(Integer id) {
         return jdbcTemplate.query("SELECT * FROM users WHERE id=?",
@@ -33,16 +62,34 @@ public class UserDbStorage implements UserStorage {
                 .stream().findAny().orElse(null);
     }
 
+    @Override
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        List<Integer> idList = new ArrayList<>(ids);
+        Set<Integer> existing = new HashSet<>();
+        for (int from = 0; from < idList.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            List<Integer> chunk = idList.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, idList.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            existing.addAll(jdbcTemplate.queryForList("SELECT id FROM users WHERE id IN (" + placeholders + ")",
+                    Integer.class, chunk.toArray()));
+        }
+
+        return existing;
+    }
+
     @Override
     public User create(User user) {
-        String sql = "INSERT INTO users (email, login, name, birthday) VALUES (?,?,?,?)";
-        jdbcTemplate.update(sql, user.getEmail(), user.getLogin(),
-                user.getName(), user.getBirthday());
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement("INSERT INTO users (email, login, " +
+                    "name, birthday) VALUES (?,?,?,?)", new String[]{"id"});
+            ps.setString(1, user.getEmail());
+            ps.setString(2, user.getLogin());
+            ps.setString(3, user.getName());
+            ps.setObject(4, user.getBirthday());
+            return ps;
+        }, keyHolder);
 
-        user.setId(jdbcTemplate.query("SELECT MAX(id) AS last_id FROM users",
-                        (rs, rowNum) -> rs.getInt("last_id"))
-                .stream()
-                .findAny().orElse(0));
+        user.setId(Objects.requireNonNull(keyHolder.getKey()).intValue());
 
         return user;
     }
@@ -103,6 +150,7 @@ public class UserDbStorage implements UserStorage {
         } else {
             jdbcTemplate.update("INSERT INTO friends(inviter, invitee, status) " +
                     "VALUES(?, ?, false)", inviter, invitee);
+            friendGraph().add(inviter, invitee);
             friends.setStatus(false);
         }
 
@@ -122,6 +170,8 @@ public class UserDbStorage implements UserStorage {
             jdbcTemplate.update("DELETE FROM friends " +
                             "WHERE inviter  IN (?,?) AND invitee IN (?,?)",
                     inviter, invitee, inviter, invitee);
+            friendGraph().remove(inviter, invitee);
+            friendGraph().remove(invitee, inviter);
 
             return new Friends(inviter, invitee);
         } else {
@@ -148,29 +198,64 @@ public class UserDbStorage implements UserStorage {
 
     @Override
     public List<User> findMutualFriendsByTwoIds(Integer id, Integer friendId) {
-        String allFriendsSql = "SELECT * FROM " +
-                "(SELECT u.* " +
-                "FROM friends as f " +
-                "INNER JOIN users u ON f.INVITEE = u.id " +
-                "WHERE f.INVITER = ? " +
-                "AND f.status = TRUE " +
-                "UNION " +
-                "SELECT u.* " +
-                "FROM friends as f " +
-                "INNER JOIN users u ON f.invitee = u.id " +
-                "WHERE f.inviter = ?) as f1 " +
-                "INNER JOIN " +
-                "(SELECT us.* " +
-                "FROM friends as fs " +
-                "INNER JOIN users us ON fs.INVITEE = us.id " +
-                "WHERE fs.INVITER = ? " +
-                "AND fs.status = TRUE " +
-                "UNION " +
-                "SELECT us.* " +
-                "FROM friends as fs " +
-                "INNER JOIN users us ON fs.invitee = us.id " +
-                "WHERE fs.inviter = ?) as f2 " +
-                "ON f1.id = f2.id ";
-        return jdbcTemplate.query(allFriendsSql, new Object[]{id, id, friendId, friendId}, new UserMaker());
+        String mutualFriendsSql = "SELECT u.* " +
+                "FROM friends f " +
+                "INNER JOIN friends fs ON fs.inviter = ? AND fs.invitee = f.invitee " +
+                "INNER JOIN users u ON u.id = f.invitee " +
+                "WHERE f.inviter = ? " +
+                "ORDER BY u.id";
+        return jdbcTemplate.query(mutualFriendsSql, new UserMaker(), friendId, id);
+    }
+
+    /*
+     Подсказки считаются по графу дружбы в памяти, из базы читаются только
+     найденные пользователи. Общие друзья - как в findMutualFriendsByTwoIds.
+     */
+    @Override
+    public List<User> findFriendSuggestions(Integer id, int count) {
+        List<Integer> ids = friendGraph().suggest(id, count);
+        Map<Integer, User> usersById = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, ids.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("SELECT * FROM users WHERE id IN (" + placeholders + ")",
+                            new UserMaker(), chunk.toArray())
+                    .forEach(user -> usersById.put(user.getId(), user));
+        }
+
+        List<User> users = new ArrayList<>(ids.size());
+        for (Integer userId : ids) {
+            users.add(usersById.get(userId));
+        }
+
+        return users;
+    }
+
+    private FriendGraph friendGraph() {
+        FriendGraph graph = friendGraph;
+
+        if (graph == null) {
+            synchronized (this) {
+                graph = friendGraph;
+                if (graph == null) {
+                    int[][] edges = {new int[1024], new int[1024]};
+                    int[] size = new int[1];
+                    jdbcTemplate.query("SELECT inviter, invitee FROM friends",
+                            (RowCallbackHandler) rs -> {
+                                if (size[0] == edges[0].length) {
+                                    edges[0] = Arrays.copyOf(edges[0], size[0] * 2);
+                                    edges[1] = Arrays.copyOf(edges[1], size[0] * 2);
+                                }
+                                edges[0][size[0]] = rs.getInt("inviter");
+                                edges[1][size[0]] = rs.getInt("invitee");
+                                size[0]++;
+                            });
+                    graph = new FriendGraph(Arrays.copyOf(edges[0], size[0]), Arrays.copyOf(edges[1], size[0]));
+                    friendGraph = graph;
+                }
+            }
+        }
+
+        return graph;
     }
 }
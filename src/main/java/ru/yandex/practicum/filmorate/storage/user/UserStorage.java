@@ -2,16 +2,23 @@ package ru.yandex.practicum.filmorate.storage.user;
 
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Friends;
+import ru.yandex.practicum.filmorate.model.SortOrder;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 @Component
 public interface UserStorage {
     List<User> findAll();
 
+    List<User> findPage(Integer afterId, int limit, SortOrder sort);
+
     User findById(Integer id);
 
+    Set<Integer> findExistingIds(Collection<Integer> ids);
+
     User create(User user);
 
     User update(User user);
@@ -23,4 +30,10 @@ public interface UserStorage {
     List<User> findFriendsById(Integer id);
 
     List<User> findMutualFriendsByTwoIds(Integer id, Integer friendId);
+
+    /*
+     Пользователи, которые еще не в друзьях, но имеют с данным общих друзей, по
+     убыванию числа общих друзей.
+     */
+    List<User> findFriendSuggestions(Integer id, int count);
 }
@@ -0,0 +1,22 @@
+ALTER TABLE films ADD COLUMN IF NOT EXISTS like_count INTEGER DEFAULT 0 NOT NULL;
+
+ALTER TABLE films_likes ALTER COLUMN emoji ENUM('LIKE', 'LOVE', 'LAUGH', 'WOW', 'SAD', 'ANGRY') NOT NULL;
+
+CREATE TABLE IF NOT EXISTS films_reactions
+(
+    film_id INTEGER REFERENCES films (id),
+        emoji ENUM('LIKE', 'LOVE', 'LAUGH', 'WOW', 'SAD', 'ANGRY') NOT NULL,
+        reaction_count INTEGER DEFAULT 0 NOT NULL,
+        CONSTRAINT films_reactions_pk PRIMARY KEY (film_id, emoji)
+);
+
+CREATE INDEX IF NOT EXISTS films_mpa_idx ON films (mpa_id);
+CREATE INDEX IF NOT EXISTS friends_invitee_idx ON friends (invitee);
+CREATE INDEX IF NOT EXISTS films_likes_user_idx ON films_likes (user_id);
+CREATE INDEX IF NOT EXISTS films_genres_film_idx ON films_genres (film_id, genres_id);
+
+UPDATE films f SET like_count = (SELECT COUNT(*) FROM films_likes fl
+        WHERE fl.film_id = f.id AND fl.emoji IN ('LIKE', 'LOVE', 'LAUGH', 'WOW'));
+
+MERGE INTO films_reactions (film_id, emoji, reaction_count) KEY (film_id, emoji)
+SELECT film_id, emoji, COUNT(*) FROM films_likes GROUP BY film_id, emoji;
@@ -1,5 +1,6 @@
 DROP TABLE IF EXISTS films_genres;
 DROP TABLE IF EXISTS films_likes;
+DROP TABLE IF EXISTS films_reactions;
 DROP TABLE IF EXISTS films;
 
 CREATE TABLE films
@@ -9,7 +10,8 @@ CREATE TABLE films
         description VARCHAR(200),
         release_date DATE,
         duration INTEGER NOT NULL,
-        mpa_id INTEGER NOT NULL
+        mpa_id INTEGER NOT NULL,
+        like_count INTEGER DEFAULT 0 NOT NULL
 );
 
 DROP TABLE IF EXISTS friends;
@@ -35,10 +37,18 @@ CREATE TABLE films_likes
 (
     film_id INTEGER REFERENCES films (id),
         user_id INTEGER REFERENCES users (id),
-        emoji ENUM('LIKE') NOT NULL,
+        emoji ENUM('LIKE', 'LOVE', 'LAUGH', 'WOW', 'SAD', 'ANGRY') NOT NULL,
         CONSTRAINT likes_pk PRIMARY KEY (film_id, user_id)
 );
 
+CREATE TABLE films_reactions
+(
+    film_id INTEGER REFERENCES films (id),
+        emoji ENUM('LIKE', 'LOVE', 'LAUGH', 'WOW', 'SAD', 'ANGRY') NOT NULL,
+        reaction_count INTEGER DEFAULT 0 NOT NULL,
+        CONSTRAINT films_reactions_pk PRIMARY KEY (film_id, emoji)
+);
+
 DROP TABLE IF EXISTS genres;
 CREATE TABLE genres
 (
@@ -59,3 +69,8 @@ CREATE TABLE mpa
     id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
         name VARCHAR(20)
 );
+
+CREATE INDEX IF NOT EXISTS films_mpa_idx ON films (mpa_id);
+CREATE INDEX IF NOT EXISTS friends_invitee_idx ON friends (invitee);
+CREATE INDEX IF NOT EXISTS films_likes_user_idx ON films_likes (user_id);
+CREATE INDEX IF NOT EXISTS films_genres_film_idx ON films_genres (film_id, genres_id);
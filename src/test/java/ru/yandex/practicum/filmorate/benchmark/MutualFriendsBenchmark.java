@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.dao.UserMaker;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Сравнивает поиск общих друзей UserDbStorage с прежним запросом на UNION-подзапросах.
+ У пользователей 1 и 2 по friendCount друзей, половина из них общие; остальные
+ пользователи получают по несколько случайных друзей, чтобы таблицы росли вместе
+ с userCount. Время нового запроса должно зависеть от friendCount, а не от userCount.
+
+ Запуск: mvn test-compile, затем MutualFriendsBenchmark.main с тестовым classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MutualFriendsBenchmark {
+    private static final int BACKGROUND_FRIENDS_PER_USER = 5;
+
+    private static final String LEGACY_MUTUAL_FRIENDS_SQL = "SELECT * FROM " +
+            "(SELECT u.* FROM friends as f INNER JOIN users u ON f.INVITEE = u.id " +
+            "WHERE f.INVITER = ? AND f.status = TRUE " +
+            "UNION " +
+            "SELECT u.* FROM friends as f INNER JOIN users u ON f.invitee = u.id " +
+            "WHERE f.inviter = ?) as f1 " +
+            "INNER JOIN " +
+            "(SELECT us.* FROM friends as fs INNER JOIN users us ON fs.INVITEE = us.id " +
+            "WHERE fs.INVITER = ? AND fs.status = TRUE " +
+            "UNION " +
+            "SELECT us.* FROM friends as fs INNER JOIN users us ON fs.invitee = us.id " +
+            "WHERE fs.inviter = ?) as f2 " +
+            "ON f1.id = f2.id ";
+
+    @Param({"10000", "100000"})
+    private int userCount;
+
+    @Param({"10", "100", "1000"})
+    private int friendCount;
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private UserDbStorage userDbStorage;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StorageFixture.quietLogging();
+        dataSource = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        userDbStorage = new UserDbStorage(jdbcTemplate);
+
+        List<Object[]> users = new ArrayList<>(userCount);
+        for (int i = 1; i <= userCount; i++) {
+            users.add(new Object[]{"user" + i + "@mail.ru", "login" + i, "name" + i,
+                    Date.valueOf(LocalDate.parse("1990-01-01").plusDays(i % 10000))});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (email, login, name, birthday) VALUES (?,?,?,?)", users);
+
+        List<Object[]> friends = new ArrayList<>();
+        for (int i = 0; i < friendCount; i++) {
+            friends.add(new Object[]{1, 3 + i});
+            friends.add(new Object[]{2, 3 + i + friendCount / 2});
+        }
+        Random random = new Random(42);
+        for (int inviter = 3; inviter <= userCount; inviter++) {
+            for (int j = 0; j < BACKGROUND_FRIENDS_PER_USER; j++) {
+                int invitee = 1 + random.nextInt(userCount);
+                if (invitee != inviter) {
+                    friends.add(new Object[]{inviter, invitee});
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate("MERGE INTO friends (inviter, invitee, status) KEY (inviter, invitee) " +
+                "VALUES (?, ?, false)", friends);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Benchmark
+    public List<User> mutualFriends() {
+        return userDbStorage.findMutualFriendsByTwoIds(1, 2);
+    }
+
+    @Benchmark
+    public List<User> legacyUnionQuery() {
+        return jdbcTemplate.query(LEGACY_MUTUAL_FRIENDS_SQL, new UserMaker(), 1, 1, 2, 2);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(MutualFriendsBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/mutual-friends-benchmark.json")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,200 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
+import ru.yandex.practicum.filmorate.model.LikeBatchResult;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeResponse;
+import ru.yandex.practicum.filmorate.model.SearchField;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Горячие пути FilmStorage и UserStorage на одинаковом наборе данных для H2 (db)
+ и хранилищ в памяти (mem). Объем данных задается параметрами и переопределяется
+ из командной строки, например: -p filmCount=100000 -p likesPerFilm=50,
+ а отдельные бенчмарки выбираются регулярным выражением: StorageBenchmark.filmTopFilms.
+
+ Запуск: mvn test-compile, затем StorageBenchmark.main с тестовым classpath.
+ Результаты пишутся в target/storage-benchmark.json.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 1)
+public class StorageBenchmark {
+    private static final int TOP_FILMS_COUNT = 10;
+    private static final int LIKE_BATCH_SIZE = 1000;
+    private static final Set<SearchField> SEARCH_FIELDS = EnumSet.allOf(SearchField.class);
+
+    @Param({"db", "mem"})
+    private String storage;
+
+    @Param({"1000", "10000"})
+    private int filmCount;
+
+    @Param({"1000"})
+    private int userCount;
+
+    @Param({"20"})
+    private int likesPerFilm;
+
+    @Param({"20"})
+    private int friendsPerUser;
+
+    private StorageFixture fixture;
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+    private Film updatedFilm;
+    private int nextFilmId;
+    private int nextUserId;
+    private List<LikeEvent> likeBatch;
+    private List<LikeEvent> unlikeBatch;
+    private boolean liked;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StorageFixture.quietLogging();
+        fixture = new StorageFixture(filmCount, userCount, likesPerFilm, friendsPerUser);
+        fixture.open(storage);
+        filmStorage = fixture.filmStorage();
+        userStorage = fixture.userStorage();
+        updatedFilm = filmStorage.findById(1);
+
+        likeBatch = new ArrayList<>(LIKE_BATCH_SIZE);
+        unlikeBatch = new ArrayList<>(LIKE_BATCH_SIZE);
+        for (int i = 0; i < LIKE_BATCH_SIZE; i++) {
+            int filmId = i % filmCount + 1;
+            int userId = (i * 7 + i / filmCount) % userCount + 1;
+            likeBatch.add(new LikeEvent(filmId, userId, LikeOperation.LIKE));
+            unlikeBatch.add(new LikeEvent(filmId, userId, LikeOperation.UNLIKE));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public List<Film> filmFindAll() {
+        return filmStorage.findAll();
+    }
+
+    @Benchmark
+    public List<Film> filmTopFilms() {
+        return filmStorage.topFilms(TOP_FILMS_COUNT);
+    }
+
+    @Benchmark
+    public List<Film> filmTopFilmsCountView() {
+        return filmStorage.topFilms(TOP_FILMS_COUNT, FilmView.COUNT);
+    }
+
+    @Benchmark
+    public List<Film> filmTopFilmsByGenreAndYear() {
+        return filmStorage.topFilms(TOP_FILMS_COUNT, 2, 1960, FilmView.COUNT);
+    }
+
+    @Benchmark
+    public Film filmFindById() {
+        nextFilmId = nextFilmId % fixture.filmCount() + 1;
+        return filmStorage.findById(nextFilmId);
+    }
+
+    @Benchmark
+    public Film filmUpdate() {
+        return filmStorage.update(updatedFilm);
+    }
+
+    /*
+     Пакет из LIKE_BATCH_SIZE событий; пакеты лайков и отмен чередуются, чтобы
+     данные не менялись от итерации к итерации. Время делится на размер пакета.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LIKE_BATCH_SIZE)
+    public LikeBatchResult filmApplyLikes() {
+        liked = !liked;
+        return filmStorage.applyLikes(liked ? likeBatch : unlikeBatch);
+    }
+
+    /*
+     Лайк и отмена лайка с коротким ответом чередуются на одном фильме; время не
+     должно зависеть от числа лайков фильма.
+     */
+    @Benchmark
+    public LikeResponse filmLikeAndCount() {
+        liked = !liked;
+        return liked ? filmStorage.addLikeAndCount(1, fixture.userCount())
+                : filmStorage.removeLikeAndCount(1, fixture.userCount());
+    }
+
+    @Benchmark
+    public List<Film> filmRecommendations() {
+        nextUserId = nextUserId % fixture.userCount() + 1;
+        return filmStorage.recommendations(nextUserId, 10, FilmView.COUNT);
+    }
+
+    @Benchmark
+    public List<Film> filmSimilarFilms() {
+        nextFilmId = nextFilmId % fixture.filmCount() + 1;
+        return filmStorage.similarFilms(nextFilmId, 10, FilmView.COUNT);
+    }
+
+    /*
+     Слово запроса "film1" - начало каждого десятого названия, поэтому проверяется
+     и слияние списков многих слов индекса, а не только точное совпадение.
+     */
+    @Benchmark
+    public List<Film> filmSearch() {
+        return filmStorage.search("film1 description", SEARCH_FIELDS, 10, FilmView.COUNT);
+    }
+
+    @Benchmark
+    public List<User> userFindFriendsById() {
+        nextUserId = nextUserId % fixture.userCount() + 1;
+        return userStorage.findFriendsById(nextUserId);
+    }
+
+    @Benchmark
+    public List<User> userFindMutualFriends() {
+        nextUserId = nextUserId % (fixture.userCount() - 1) + 1;
+        return userStorage.findMutualFriendsByTwoIds(nextUserId, nextUserId + 1);
+    }
+
+    @Benchmark
+    public List<User> userFindFriendSuggestions() {
+        nextUserId = nextUserId % fixture.userCount() + 1;
+        return userStorage.findFriendSuggestions(nextUserId, 10);
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/storage-benchmark.json");
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(StorageBenchmark.class.getSimpleName());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,221 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/*
+ Общий набор данных для бенчмарков хранилищ. Данные генерируются детерминированно
+ (фиксированный seed), поэтому замеры до и после изменения хранилища сравнимы.
+ В H2 данные загружаются пакетными вставками, в хранилища в памяти - через их API.
+ */
+class StorageFixture {
+    private static final long SEED = 42;
+    private static final int GENRE_COUNT = 6;
+    private static final int MPA_COUNT = 5;
+    private static final int GENRES_PER_FILM = 2;
+
+    private final int filmCount;
+    private final int userCount;
+    private final List<int[]> likes = new ArrayList<>();
+    private final List<int[]> friends = new ArrayList<>();
+    private final int[] likeCounts;
+
+    private EmbeddedDatabase dataSource;
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+
+    StorageFixture(int filmCount, int userCount, int likesPerFilm, int friendsPerUser) {
+        this.filmCount = filmCount;
+        this.userCount = userCount;
+        this.likeCounts = new int[filmCount + 1];
+        Random random = new Random(SEED);
+
+        /* Число лайков у фильмов разное (в среднем likesPerFilm), чтобы рейтинг был неоднородным */
+        for (int filmId = 1; filmId <= filmCount; filmId++) {
+            int count = Math.min(userCount, random.nextInt(2 * likesPerFilm + 1));
+            int firstUser = random.nextInt(userCount);
+            for (int j = 0; j < count; j++) {
+                likes.add(new int[]{filmId, (firstUser + j) % userCount + 1});
+            }
+            likeCounts[filmId] = count;
+        }
+
+        Set<Long> pairs = new HashSet<>();
+        for (int inviter = 1; inviter <= userCount; inviter++) {
+            for (int j = 0; j < friendsPerUser; j++) {
+                int invitee = 1 + random.nextInt(userCount);
+                long pair = (long) Math.min(inviter, invitee) << 32 | Math.max(inviter, invitee);
+                if (invitee != inviter && pairs.add(pair)) {
+                    friends.add(new int[]{inviter, invitee});
+                }
+            }
+        }
+    }
+
+    /*
+     Без конфигурации logback пишет в консоль все на уровне DEBUG, включая каждый
+     запрос JdbcTemplate, и замеры показывали бы скорость логирования.
+     */
+    static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    void open(String storage) {
+        if ("db".equals(storage)) {
+            openDb();
+        } else if ("mem".equals(storage)) {
+            openInMemory();
+        } else {
+            throw new IllegalArgumentException("Неизвестное хранилище: " + storage);
+        }
+    }
+
+    void close() {
+        if (dataSource != null) {
+            dataSource.shutdown();
+            dataSource = null;
+        }
+    }
+
+    FilmStorage filmStorage() {
+        return filmStorage;
+    }
+
+    UserStorage userStorage() {
+        return userStorage;
+    }
+
+    int filmCount() {
+        return filmCount;
+    }
+
+    int userCount() {
+        return userCount;
+    }
+
+    private void openDb() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .addScript("data.sql")
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        List<Object[]> users = new ArrayList<>(userCount);
+        for (int i = 1; i <= userCount; i++) {
+            users.add(new Object[]{"user" + i + "@mail.ru", "login" + i, "name" + i,
+                    Date.valueOf(birthday(i))});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (email, login, name, birthday) VALUES (?,?,?,?)", users);
+
+        List<Object[]> films = new ArrayList<>(filmCount);
+        List<Object[]> filmsGenres = new ArrayList<>();
+        for (int i = 1; i <= filmCount; i++) {
+            films.add(new Object[]{"film" + i, "description" + i, Date.valueOf(releaseDate(i)),
+                    90 + i % 60, mpaId(i), likeCounts[i]});
+            for (Genre genre : genres(i)) {
+                filmsGenres.add(new Object[]{genre.getId(), i});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO films (name, description, release_date, duration, mpa_id, " +
+                "like_count) VALUES (?,?,?,?,?,?)", films);
+        jdbcTemplate.batchUpdate("INSERT INTO films_genres (genres_id, film_id) VALUES (?, ?)", filmsGenres);
+
+        List<Object[]> likeRows = new ArrayList<>(likes.size());
+        for (int[] like : likes) {
+            likeRows.add(new Object[]{like[0], like[1]});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO films_likes (film_id, user_id, emoji) VALUES (?, ?, 'LIKE')",
+                likeRows);
+        jdbcTemplate.update("INSERT INTO films_reactions (film_id, emoji, reaction_count) " +
+                "SELECT id, 'LIKE', like_count FROM films WHERE like_count > 0");
+
+        List<Object[]> friendRows = new ArrayList<>(friends.size());
+        for (int[] pair : friends) {
+            friendRows.add(new Object[]{pair[0], pair[1]});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO friends (inviter, invitee, status) VALUES (?, ?, false)",
+                friendRows);
+
+        filmStorage = new FilmDbStorage(jdbcTemplate, new ReferenceDataCache(jdbcTemplate));
+        userStorage = new UserDbStorage(jdbcTemplate);
+    }
+
+    private void openInMemory() {
+        filmStorage = new InMemoryFilmStorage();
+        userStorage = new InMemoryUserStorage();
+
+        for (int i = 1; i <= userCount; i++) {
+            userStorage.create(User.builder()
+                    .email("user" + i + "@mail.ru")
+                    .login("login" + i)
+                    .name("name" + i)
+                    .birthday(birthday(i))
+                    .build());
+        }
+        for (int i = 1; i <= filmCount; i++) {
+            filmStorage.create(Film.builder()
+                    .name("film" + i)
+                    .description("description" + i)
+                    .releaseDate(releaseDate(i))
+                    .duration(90 + i % 60)
+                    .likes(new HashMap<>())
+                    .mpa(new Mpa(mpaId(i)))
+                    .genres(genres(i))
+                    .build());
+        }
+        for (int[] like : likes) {
+            filmStorage.addLike(like[0], like[1]);
+        }
+        for (int[] pair : friends) {
+            userStorage.addFriends(pair[0], pair[1]);
+        }
+    }
+
+    private static LocalDate birthday(int userId) {
+        return LocalDate.parse("1970-01-01").plusDays(userId % 10000);
+    }
+
+    private static LocalDate releaseDate(int filmId) {
+        return LocalDate.parse("1950-01-01").plusDays(filmId % 25000);
+    }
+
+    private static int mpaId(int filmId) {
+        return filmId % MPA_COUNT + 1;
+    }
+
+    private static List<Genre> genres(int filmId) {
+        List<Genre> genres = new ArrayList<>(GENRES_PER_FILM);
+        for (int j = 0; j < GENRES_PER_FILM; j++) {
+            genres.add(new Genre((filmId + j) % GENRE_COUNT + 1));
+        }
+
+        return genres;
+    }
+}
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ База со схемой до появления films.like_count, films_reactions и реакций кроме LIKE.
+ */
+class EmptyDatabaseInitializerTest {
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE films (id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                "name VARCHAR NOT NULL, description VARCHAR(200), release_date DATE, " +
+                "duration INTEGER NOT NULL, mpa_id INTEGER NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE users (id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                "email VARCHAR NOT NULL, login VARCHAR NOT NULL, name VARCHAR, birthday DATE)");
+        jdbcTemplate.execute("CREATE TABLE friends (inviter INTEGER REFERENCES users (id), " +
+                "invitee INTEGER REFERENCES users (id), status bool, " +
+                "CONSTRAINT friends_pk PRIMARY KEY (inviter, invitee))");
+        jdbcTemplate.execute("CREATE TABLE films_likes (film_id INTEGER REFERENCES films (id), " +
+                "user_id INTEGER REFERENCES users (id), emoji ENUM('LIKE') NOT NULL, " +
+                "CONSTRAINT likes_pk PRIMARY KEY (film_id, user_id))");
+        jdbcTemplate.execute("CREATE TABLE films_genres (film_id INTEGER REFERENCES films (id), " +
+                "genres_id INTEGER)");
+        jdbcTemplate.update("INSERT INTO films (name, description, release_date, duration, mpa_id) " +
+                "VALUES ('name1', 'description1', '2000-01-01', 90, 1), ('name2', 'description2', '2000-01-01', 90, 1)");
+        jdbcTemplate.update("INSERT INTO users (email, login) VALUES ('a@mail.ru', 'a'), ('b@mail.ru', 'b')");
+        jdbcTemplate.update("INSERT INTO films_likes (film_id, user_id, emoji) " +
+                "VALUES (2, 1, 'LIKE'), (2, 2, 'LIKE')");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    public void oldSchemaIsMigratedAndCountersAreFilled() {
+        EmptyDatabaseInitializer initializer = new EmptyDatabaseInitializer(dataSource,
+                new SqlInitializationProperties());
+
+        assertTrue(initializer.initializeDatabase());
+
+        assertEquals(List.of(0, 2), jdbcTemplate.queryForList("SELECT like_count FROM films ORDER BY id",
+                Integer.class));
+        assertEquals(List.of(Map.of("FILM_ID", 2, "EMOJI", "LIKE", "REACTION_COUNT", 2)),
+                jdbcTemplate.queryForList("SELECT film_id, emoji, reaction_count FROM films_reactions"));
+        jdbcTemplate.update("UPDATE films_likes SET emoji = 'ANGRY' WHERE film_id = 2 AND user_id = 1");
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES " +
+                "WHERE INDEX_NAME IN ('FILMS_MPA_IDX', 'FRIENDS_INVITEE_IDX', 'FILMS_LIKES_USER_IDX', " +
+                "'FILMS_GENRES_FILM_IDX')", Integer.class));
+
+        assertFalse(initializer.initializeDatabase());
+        DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("migration.sql")),
+                dataSource);
+        assertEquals(List.of(0, 1), jdbcTemplate.queryForList("SELECT like_count FROM films ORDER BY id",
+                Integer.class));
+    }
+}
@@ -5,12 +5,14 @@ import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import ru.yandex.practicum.filmorate.exception.IdNotFoundException;
 import ru.yandex.practicum.filmorate.model.Emoji;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.FilmService;
@@ -21,8 +23,13 @@ import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -45,7 +52,8 @@ class FilmControllerIntegrationTest {
         inMemoryUserStorage = new InMemoryUserStorage();
         userService = new UserService(inMemoryUserStorage);
         this.mockMvc = MockMvcBuilders.standaloneSetup(new FilmController(
-                        new FilmService(inMemoryFilmStorage, userService)), new ErrorHandler())
+                        new FilmService(inMemoryFilmStorage, userService),
+                        Jackson2ObjectMapperBuilder.json().build()), new ErrorHandler())
                 .build();
     }
 
@@ -643,5 +651,50 @@ class FilmControllerIntegrationTest {
                         .getLikes().toString())))
                 .andReturn();
     }
-}
 
+    @Test
+    public void concurrentLikesAndReadsSeeConsistentLikes() throws Exception {
+        inMemoryFilmStorage.create(new Film("name1", "description1",
+                LocalDate.parse("1995-12-27"), 91, new HashMap<>(), mpa, new ArrayList<>()));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int firstUserId = i * 250 + 1;
+            results.add(executor.submit(() -> {
+                for (int userId = firstUserId; userId < firstUserId + 250; userId++) {
+                    inMemoryFilmStorage.addLike(1, userId);
+                    inMemoryFilmStorage.react(1, userId, Emoji.WOW);
+                }
+            }));
+            results.add(executor.submit(() -> {
+                for (int j = 0; j < 500; j++) {
+                    Film film = inMemoryFilmStorage.findById(1);
+                    assertEquals(film.getLikes().size(), new ArrayList<>(film.getLikes().keySet()).size());
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Film film = inMemoryFilmStorage.findById(1);
+        assertEquals(1000, film.getLikes().size());
+        assertTrue(film.getLikes().values().stream().allMatch(emoji -> emoji == Emoji.WOW));
+    }
+
+    @Test
+    public void onlyPositiveReactionsCountAsLikes() {
+        inMemoryFilmStorage.create(new Film("name1", "description1",
+                LocalDate.parse("1995-12-27"), 91, new HashMap<>(), mpa, new ArrayList<>()));
+
+        assertEquals(0, inMemoryFilmStorage.react(1, 1, Emoji.ANGRY).getLikeCount());
+        assertEquals(1, inMemoryFilmStorage.react(1, 2, Emoji.LOVE).getLikeCount());
+        assertEquals(0, inMemoryFilmStorage.react(1, 2, Emoji.SAD).getLikeCount());
+        assertEquals(1, inMemoryFilmStorage.addLikeAndCount(1, 3).getLikeCount());
+        assertEquals(1, inMemoryFilmStorage.removeLikeAndCount(1, 1).getLikeCount());
+
+        assertEquals(1, inMemoryFilmStorage.findById(1).getLikeCount());
+        assertEquals(1, inMemoryFilmStorage.findById(1, FilmView.COUNT).getLikeCount());
+    }
+}
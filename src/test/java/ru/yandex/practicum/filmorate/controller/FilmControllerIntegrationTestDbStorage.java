@@ -1,33 +1,51 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.IdNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataCache;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
 import javax.sql.DataSource;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 class FilmControllerIntegrationTestDbStorage {
@@ -68,12 +86,13 @@ class FilmControllerIntegrationTestDbStorage {
     @BeforeEach
     public void setup() {
         JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
-        filmDbStorage = new FilmDbStorage(jdbcTemplate);
+        filmDbStorage = new FilmDbStorage(jdbcTemplate, new ReferenceDataCache(jdbcTemplate));
         userDbStorage = new UserDbStorage(jdbcTemplate);
         UserService userService = new UserService(userDbStorage);
 
         mockMvc = MockMvcBuilders.standaloneSetup(new FilmController(
-                        new FilmService(filmDbStorage, userService)), new ErrorHandler())
+                        new FilmService(filmDbStorage, userService),
+                        Jackson2ObjectMapperBuilder.json().build()), new ErrorHandler())
                 .build();
 
         updatedFilmId1.setLikes(new HashMap<>());
@@ -81,6 +100,35 @@ class FilmControllerIntegrationTestDbStorage {
         updatedFilmId1.setGenres(new ArrayList<>());
     }
 
+    private void createFilms(int count) {
+        createFilms(count, i -> List.of());
+    }
+
+    private void createFilms(int count, IntFunction<List<Genre>> genres) {
+        for (int i = 1; i <= count; i++) {
+            filmDbStorage.create(Film.builder()
+                    .name("name" + i)
+                    .description("description" + i)
+                    .releaseDate(LocalDate.parse("2000-01-01"))
+                    .duration(90 + i)
+                    .likes(new HashMap<>())
+                    .mpa(new Mpa(1, "G"))
+                    .genres(new ArrayList<>(genres.apply(i)))
+                    .build());
+        }
+    }
+
+    private void createUsers(int count) {
+        for (int i = 1; i <= count; i++) {
+            userDbStorage.create(User.builder()
+                    .email("email@leo" + i + ".ru")
+                    .login("login" + i)
+                    .name("name" + i)
+                    .birthday(LocalDate.parse("1995-12-27"))
+                    .build());
+        }
+    }
+
     @Test
     public void createFilmWhenFilmFieldsAreCorrect() throws Exception {
         ObjectMapper objectMapper = new ObjectMapper();
@@ -236,6 +284,29 @@ class FilmControllerIntegrationTestDbStorage {
                 .andReturn();
     }
 
+    @Test
+    public void updatePutWhenLikesAreOtherUsersOfSameCount() throws Exception {
+        filmDbStorage.create(newfilm);
+        createUsers(3);
+        filmDbStorage.addLike(1, 1);
+        filmDbStorage.addLike(1, 2);
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.findAndRegisterModules();
+
+        updatedFilmId1.setLikes(new HashMap<>(Map.of(1, Emoji.LIKE, 3, Emoji.LIKE)));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(updatedFilmId1)))
+                .andExpect(status().isBadRequest());
+
+        updatedFilmId1.setLikes(new HashMap<>(Map.of(1, Emoji.LIKE, 2, Emoji.LIKE)));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(updatedFilmId1)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value(updatedFilmId1.getName()));
+    }
+
     @Test
     public void updateFilmWhenIdIsNotExist() throws Exception {
         Film film2 = new Film(2, "Updated name", "Updated description",
@@ -419,6 +490,637 @@ class FilmControllerIntegrationTestDbStorage {
                 .andReturn();
     }
 
+    @Test
+    public void findFilmsPageRequest() throws Exception {
+        createFilms(5);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/films?limit=2&afterId=2"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id").value(3))
+                .andExpect(jsonPath("$[0].name").value("name3"))
+                .andExpect(jsonPath("$[1].id").value(4))
+                .andReturn();
+    }
+
+    @Test
+    public void createFilmsBatchReportsResultPerItem() throws Exception {
+        Film invalidMpaFilm = Film.builder()
+                .name("name2")
+                .description("description2")
+                .releaseDate(LocalDate.parse("2000-01-01"))
+                .duration(100)
+                .likes(new HashMap<>())
+                .mpa(new Mpa(99))
+                .genres(new ArrayList<>())
+                .build();
+        Film blankNameFilm = Film.builder()
+                .name("")
+                .description("description3")
+                .releaseDate(LocalDate.parse("2000-01-01"))
+                .duration(100)
+                .likes(new HashMap<>())
+                .mpa(new Mpa(1))
+                .genres(new ArrayList<>())
+                .build();
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.findAndRegisterModules();
+        String jsonFilms = objectMapper.writeValueAsString(List.of(newfilm, invalidMpaFilm, blankNameFilm));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/films/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonFilms))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[0].error").doesNotExist())
+                .andExpect(jsonPath("$[1].index").value(1))
+                .andExpect(jsonPath("$[1].id").doesNotExist())
+                .andExpect(jsonPath("$[1].error").exists())
+                .andExpect(jsonPath("$[2].error").value("Отсутсвует название фильма"));
+
+        assertEquals(1, filmDbStorage.findAll().size());
+        assertEquals(newfilm.getName(), filmDbStorage.findById(1).getName());
+    }
+
+    @Test
+    public void createFilmsBatchFromNdjson() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.findAndRegisterModules();
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 1; i < 4; i++) {
+            ndjson.append(objectMapper.writeValueAsString(Film.builder()
+                    .name("name" + i)
+                    .description("description" + i)
+                    .releaseDate(LocalDate.parse("2000-01-01").plusYears(i))
+                    .duration(90 + i)
+                    .likes(new HashMap<>())
+                    .mpa(new Mpa(i))
+                    .genres(new ArrayList<>(List.of(new Genre(i), new Genre(i + 1))))
+                    .build())).append('\n');
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/films/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[2].id").value(3));
+
+        Film stored = filmDbStorage.findById(3);
+        assertEquals("name3", stored.getName());
+        assertEquals(LocalDate.parse("2003-01-01"), stored.getReleaseDate());
+        assertEquals(3, stored.getMpa().getId());
+        assertEquals(2, stored.getGenres().size());
+        assertEquals(4, stored.getGenres().get(1).getId());
+    }
+
+    @Test
+    public void createFilmsBatchFromNdjsonReportsMalformedLines() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.findAndRegisterModules();
+        String film = objectMapper.writeValueAsString(newfilm);
+        String ndjson = film + "\n{\"name\": \"broken\"\n\n" + film + "\n{\"releaseDate\": \"not a date\"}\n";
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/films/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(4)))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[1].id").doesNotExist())
+                .andExpect(jsonPath("$[1].error").value(Matchers.startsWith("Передан не корректный JSON фильма")))
+                .andExpect(jsonPath("$[2].id").value(2))
+                .andExpect(jsonPath("$[3].error").value(Matchers.startsWith("Передан не корректный JSON фильма")));
+
+        assertEquals(2, filmDbStorage.findAll().size());
+    }
+
+    @Test
+    public void applyLikesBatchReturnsCounts() throws Exception {
+        createFilms(2);
+        createUsers(3);
+        String events = "[{\"filmId\":1,\"userId\":1,\"op\":\"LIKE\"}," +
+                "{\"filmId\":1,\"userId\":2,\"op\":\"LIKE\"}," +
+                "{\"filmId\":1,\"userId\":2,\"op\":\"LIKE\"}," +
+                "{\"filmId\":2,\"userId\":3,\"op\":\"LIKE\"}," +
+                "{\"filmId\":2,\"userId\":3,\"op\":\"UNLIKE\"}," +
+                "{\"filmId\":99,\"userId\":1,\"op\":\"LIKE\"}," +
+                "{\"filmId\":2,\"userId\":1,\"op\":\"LIKE\"}]";
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/films/likes/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(events))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(7))
+                .andExpect(jsonPath("$.added").value(3))
+                .andExpect(jsonPath("$.removed").value(0))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.unchanged").value(3));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/films/likes/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"filmId\":1,\"userId\":1,\"op\":\"UNLIKE\"}," +
+                                "{\"filmId\":2,\"userId\":2,\"op\":\"LIKE\"}," +
+                                "{\"filmId\":2,\"userId\":3,\"op\":\"LIKE\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.added").value(2))
+                .andExpect(jsonPath("$.removed").value(1));
+
+        assertEquals(Set.of(2), filmDbStorage.findById(1).getLikes().keySet());
+        assertEquals(Set.of(1, 2, 3), filmDbStorage.findById(2).getLikes().keySet());
+        List<Film> top = filmDbStorage.topFilms(2);
+        assertEquals(2, top.get(0).getId());
+        assertEquals(1, top.get(1).getId());
+        assertEquals(1, filmDbStorage.findById(1, FilmView.COUNT).getLikeCount());
+        assertEquals(3, filmDbStorage.findById(2, FilmView.COUNT).getLikeCount());
+    }
+
+    @Test
+    public void likeCountViewReturnsStatusAndCounter() throws Exception {
+        createFilms(1);
+        createUsers(2);
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/1/like/1").param("view", "count"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("ADDED"))
+                .andExpect(jsonPath("$.likeCount").value(1))
+                .andExpect(jsonPath("$.likes").doesNotExist());
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/1/like/2").param("view", "count"))
+                .andExpect(jsonPath("$.likeCount").value(2));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/1/like/2").param("view", "count"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("UNCHANGED"))
+                .andExpect(jsonPath("$.likeCount").value(2));
+        mockMvc.perform(MockMvcRequestBuilders.delete("/films/1/like/1").param("view", "count"))
+                .andExpect(jsonPath("$.status").value("REMOVED"))
+                .andExpect(jsonPath("$.likeCount").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.delete("/films/1/like/1").param("view", "count"))
+                .andExpect(jsonPath("$.status").value("UNCHANGED"))
+                .andExpect(jsonPath("$.likeCount").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/999/like/1").param("view", "count"))
+                .andExpect(status().isNotFound());
+
+        assertEquals(Set.of(2), filmDbStorage.findById(1).getLikes().keySet());
+        assertEquals(1, filmDbStorage.topFilms(1).get(0).getId());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/1").param("view", "count"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.likeCount").value(1))
+                .andExpect(jsonPath("$.likes").doesNotExist());
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("view", "count"))
+                .andExpect(jsonPath("$[0].likeCount").value(1))
+                .andExpect(jsonPath("$[0].likes").doesNotExist());
+        mockMvc.perform(MockMvcRequestBuilders.get("/films").param("limit", "10").param("view", "count"))
+                .andExpect(jsonPath("$[0].likes").doesNotExist());
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/1"))
+                .andExpect(jsonPath("$.likeCount").value(1))
+                .andExpect(jsonPath("$.likes.2").value("LIKE"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/1").param("view", "ids"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void reactionsKeepPerEmojiCounters() throws Exception {
+        createFilms(3);
+        createUsers(3);
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/2/react/1/love"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("ADDED"))
+                .andExpect(jsonPath("$.likeCount").value(1))
+                .andExpect(jsonPath("$.reactions.LOVE").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/2/react/2/LOVE"))
+                .andExpect(jsonPath("$.reactions.LOVE").value(2));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/3/react/1/LOVE"))
+                .andExpect(jsonPath("$.reactions.LOVE").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/2/react/2/WOW"))
+                .andExpect(jsonPath("$.status").value("CHANGED"))
+                .andExpect(jsonPath("$.likeCount").value(2))
+                .andExpect(jsonPath("$.reactions.LOVE").value(1))
+                .andExpect(jsonPath("$.reactions.WOW").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/2/react/2/WOW"))
+                .andExpect(jsonPath("$.status").value("UNCHANGED"));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/2/react/2/BOO"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/1/react/3/LOVE"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/1/react/2/LOVE"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("reaction", "LOVE"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[1].id").value(2))
+                .andExpect(jsonPath("$[2].id").value(3));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("reaction", "WOW"))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(2));
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/films/2/like/2").param("view", "count"))
+                .andExpect(jsonPath("$.status").value("REMOVED"));
+        mockMvc.perform(MockMvcRequestBuilders.post("/films/likes/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"filmId\":1,\"userId\":3,\"op\":\"UNLIKE\"}," +
+                                "{\"filmId\":3,\"userId\":2,\"op\":\"LIKE\"}]"))
+                .andExpect(jsonPath("$.removed").value(1));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("reaction", "WOW"))
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("reaction", "LIKE"))
+                .andExpect(jsonPath("$[0].id").value(3));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/3/react/1/LOVE"))
+                .andExpect(jsonPath("$.status").value("UNCHANGED"))
+                .andExpect(jsonPath("$.reactions.LOVE").value(1))
+                .andExpect(jsonPath("$.reactions.LIKE").value(1))
+                .andExpect(jsonPath("$.reactions.WOW").value(0));
+        assertEquals(Map.of(1, Emoji.LOVE, 2, Emoji.LIKE), filmDbStorage.findById(3).getLikes());
+    }
+
+    @Test
+    public void onlyPositiveReactionsCountAsLikes() throws Exception {
+        createFilms(2);
+        createUsers(3);
+        filmDbStorage.addLike(2, 1);
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/1/react/2/ANGRY"))
+                .andExpect(jsonPath("$.status").value("ADDED"))
+                .andExpect(jsonPath("$.likeCount").value(0))
+                .andExpect(jsonPath("$.reactions.ANGRY").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/1/react/3/SAD"))
+                .andExpect(jsonPath("$.likeCount").value(0));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(2, 1)))
+                .andExpect(jsonPath("$[1].likeCount").value(0));
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/1/react/2/LOVE"))
+                .andExpect(jsonPath("$.status").value("CHANGED"))
+                .andExpect(jsonPath("$.likeCount").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/1/react/3/LAUGH"))
+                .andExpect(jsonPath("$.likeCount").value(2));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/1/react/3/ANGRY"))
+                .andExpect(jsonPath("$.likeCount").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.delete("/films/1/like/3").param("view", "count"))
+                .andExpect(jsonPath("$.status").value("REMOVED"))
+                .andExpect(jsonPath("$.likeCount").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/1/react/3/SAD"))
+                .andExpect(jsonPath("$.likeCount").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.post("/films/likes/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"filmId\":1,\"userId\":3,\"op\":\"UNLIKE\"}]"))
+                .andExpect(jsonPath("$.removed").value(1));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/1"))
+                .andExpect(jsonPath("$.likeCount").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/1").param("view", "count"))
+                .andExpect(jsonPath("$.likeCount").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(1, 2)));
+    }
+
+    @Test
+    public void recommendationsComeFromUsersWithOverlappingLikes() throws Exception {
+        createFilms(5);
+        createUsers(5);
+        filmDbStorage.addLike(1, 1);
+        filmDbStorage.addLike(2, 1);
+        filmDbStorage.addLike(1, 2);
+        filmDbStorage.addLike(2, 2);
+        filmDbStorage.addLike(3, 2);
+        filmDbStorage.addLike(1, 3);
+        filmDbStorage.addLike(4, 3);
+        filmDbStorage.addLike(5, 4);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/1/recommendations"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(3))
+                .andExpect(jsonPath("$[1].id").value(4));
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/3/like/1").param("view", "count"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/4/react/2/WOW"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/1/recommendations").param("view", "count"))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(4))
+                .andExpect(jsonPath("$[0].likeCount").value(2))
+                .andExpect(jsonPath("$[0].likes").doesNotExist());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/4/recommendations"))
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/5/recommendations"))
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/99/recommendations"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/1/recommendations").param("count", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void rolledBackChangesDoNotReachInMemoryIndexes() throws Exception {
+        createFilms(2);
+        createUsers(1);
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(1, 2)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("reaction", "WOW"))
+                .andExpect(jsonPath("$", hasSize(0)));
+
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transaction.executeWithoutResult(status -> {
+            filmDbStorage.addLike(2, 1);
+            status.setRollbackOnly();
+        });
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(1, 2)));
+
+        transaction.executeWithoutResult(status -> {
+            filmDbStorage.applyLikes(List.of(new LikeEvent(1, 1, LikeOperation.LIKE)));
+            status.setRollbackOnly();
+        });
+        mockMvc.perform(MockMvcRequestBuilders.get("/users/1/recommendations"))
+                .andExpect(jsonPath("$", hasSize(0)));
+        assertEquals(0, filmDbStorage.refreshSimilarFilms(ForkJoinPool.commonPool()));
+
+        transaction.executeWithoutResult(status -> {
+            filmDbStorage.react(1, 1, Emoji.WOW);
+            status.setRollbackOnly();
+        });
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("reaction", "WOW"))
+                .andExpect(jsonPath("$", hasSize(0)));
+
+        transaction.executeWithoutResult(status -> filmDbStorage.addLike(2, 1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(2, 1)));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search").param("query", "name"))
+                .andExpect(jsonPath("$", hasSize(2)));
+        transaction.executeWithoutResult(status -> {
+            filmDbStorage.update(Film.builder()
+                    .id(1)
+                    .name("renamed")
+                    .description("description1")
+                    .releaseDate(LocalDate.parse("2000-01-01"))
+                    .duration(91)
+                    .likes(new HashMap<>())
+                    .mpa(new Mpa(1, "G"))
+                    .genres(new ArrayList<>())
+                    .build());
+            status.setRollbackOnly();
+        });
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search").param("query", "renamed"))
+                .andExpect(jsonPath("$", hasSize(0)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search").param("query", "name1"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(1)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(2, 1)));
+    }
+
+    @Test
+    public void lateAfterCommitCallbackDoesNotOverwriteNewerLikeCount() throws Exception {
+        createFilms(2);
+        createUsers(3);
+        filmDbStorage.addLike(2, 3);
+
+        /* Первая транзакция зафиксирована, но ее обработчики после фиксации ждут,
+           пока вторая транзакция удалит лайк и реакцию и обновит рейтинги. */
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        CountDownLatch committed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> late = executor.submit(() -> transaction.executeWithoutResult(status -> {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    committed.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            filmDbStorage.addLikeAndCount(1, 1);
+            filmDbStorage.react(1, 2, Emoji.WOW);
+        }));
+        assertTrue(committed.await(10, TimeUnit.SECONDS));
+        transaction.executeWithoutResult(status -> {
+            filmDbStorage.removeLikeAndCount(1, 1);
+            filmDbStorage.removeLikeAndCount(1, 2);
+        });
+        release.countDown();
+        late.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(2, 1)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("reaction", "WOW"))
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+
+    @Test
+    public void popularFilmsFilteredByGenreAndYear() throws Exception {
+        String[] releaseDates = {"2000-06-01", "2000-07-01", "2001-01-01", "2000-08-01"};
+        int[][] genreIds = {{1}, {1, 2}, {2}, {}};
+        for (int i = 1; i < 5; i++) {
+            List<Genre> filmGenres = new ArrayList<>();
+            for (int genreId : genreIds[i - 1]) {
+                filmGenres.add(new Genre(genreId));
+            }
+            filmDbStorage.create(Film.builder()
+                    .name("name" + i)
+                    .description("description" + i)
+                    .releaseDate(LocalDate.parse(releaseDates[i - 1]))
+                    .duration(90 + i)
+                    .likes(new HashMap<>())
+                    .mpa(new Mpa(1, "G"))
+                    .genres(filmGenres)
+                    .build());
+        }
+        createUsers(4);
+        for (int userId = 1; userId < 4; userId++) {
+            filmDbStorage.addLike(3, userId);
+        }
+        filmDbStorage.addLike(2, 1);
+        filmDbStorage.addLike(2, 2);
+        filmDbStorage.addLike(4, 1);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("genreId", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(2, 1)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("year", "2000"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(2, 4, 1)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular")
+                        .param("genreId", "2").param("year", "2000"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(2)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular")
+                        .param("genreId", "1").param("year", "2001"))
+                .andExpect(jsonPath("$", hasSize(0)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("genreId", "99"))
+                .andExpect(jsonPath("$", hasSize(0)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular")
+                        .param("genreId", "2").param("count", "1"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(3)));
+
+        filmDbStorage.update(Film.builder()
+                .id(1)
+                .name("name1")
+                .description("description1")
+                .releaseDate(LocalDate.parse("2001-02-01"))
+                .duration(91)
+                .likes(new HashMap<>())
+                .mpa(new Mpa(1, "G"))
+                .genres(new ArrayList<>(List.of(new Genre(2))))
+                .build());
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular")
+                        .param("genreId", "2").param("year", "2001"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(3, 1)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular").param("genreId", "1"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(2)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/popular")
+                        .param("reaction", "LIKE").param("year", "2000"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(2, 4)));
+    }
+
+    @Test
+    public void searchFindsFilmsByWordPrefixesRankedByRelevanceAndLikes() throws Exception {
+        String[] names = {"Ёлки", "Новогодний корпоратив", "The Matrix", "Matrix Reloaded"};
+        String[] descriptions = {"Новогодняя комедия", "Комедия о ёлке в офисе",
+                "Hacker Neo learns the truth", "Neo returns"};
+        for (int i = 1; i < 5; i++) {
+            filmDbStorage.create(Film.builder()
+                    .name(names[i - 1])
+                    .description(descriptions[i - 1])
+                    .releaseDate(LocalDate.parse("2000-01-01"))
+                    .duration(90 + i)
+                    .likes(new HashMap<>())
+                    .mpa(new Mpa(1, "G"))
+                    .genres(new ArrayList<>())
+                    .build());
+        }
+        createUsers(4);
+        filmDbStorage.addLike(4, 1);
+        filmDbStorage.addLike(4, 2);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search").param("query", "ЕЛК"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(1, 2)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search")
+                        .param("query", "ёлк").param("by", "description"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(2)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search").param("query", "matrix neo"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(4, 3)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search").param("query", "matr hacker"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(3)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search").param("query", "ma"))
+                .andExpect(jsonPath("$", hasSize(0)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search")
+                        .param("query", "matrix").param("count", "1").param("view", "count"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(4)))
+                .andExpect(jsonPath("$[0].likeCount").value(2));
+
+        filmDbStorage.update(Film.builder()
+                .id(3)
+                .name("Матрица")
+                .description("Hacker Neo learns the truth")
+                .releaseDate(LocalDate.parse("2000-01-01"))
+                .duration(93)
+                .likes(new HashMap<>())
+                .mpa(new Mpa(1, "G"))
+                .genres(new ArrayList<>())
+                .build());
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search").param("query", "matrix"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(4)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search").param("query", "матр"))
+                .andExpect(jsonPath("$[*].id").value(Matchers.contains(3)));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search").param("query", " "))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/search")
+                        .param("query", "matrix").param("by", "year"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void similarFilmsAreRefreshedOnlyForChangedFilms() throws Exception {
+        int[] genreIds = {1, 1, 2, 3};
+        createFilms(4, i -> List.of(new Genre(genreIds[i - 1])));
+        createUsers(4);
+        for (int userId = 1; userId < 4; userId++) {
+            filmDbStorage.addLike(1, userId);
+            filmDbStorage.addLike(2, userId);
+        }
+        filmDbStorage.addLike(3, 1);
+        filmDbStorage.addLike(4, 4);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        assertEquals(4, filmDbStorage.refreshSimilarFilms(pool));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/1/similar"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(2))
+                .andExpect(jsonPath("$[1].id").value(3));
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/3/react/2/LOVE"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.put("/films/3/like/3").param("view", "count"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/films/2/like/2").param("view", "count"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/films/2/like/3").param("view", "count"))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/1/similar"))
+                .andExpect(jsonPath("$[0].id").value(2));
+
+        assertEquals(2, filmDbStorage.refreshSimilarFilms(pool));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/1/similar").param("view", "count"))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(3))
+                .andExpect(jsonPath("$[0].likeCount").value(3))
+                .andExpect(jsonPath("$[1].id").value(2));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/4/similar"))
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/99/similar"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/films/1/similar").param("count", "0"))
+                .andExpect(status().isBadRequest());
+        pool.shutdown();
+    }
+
+    @Test
+    public void exportFilmsAsNdjson() throws Exception {
+        createFilms(3, i -> List.of(new Genre(i)));
+        createUsers(1);
+        filmDbStorage.addLike(2, 1);
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/films/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        String[] lines = body.split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(body.endsWith("}\n"));
+        for (int i = 0; i < lines.length; i++) {
+            assertTrue(lines[i].startsWith("{"), lines[i]);
+            JsonNode film = objectMapper.readTree(lines[i]);
+            assertEquals(i + 1, film.get("id").asInt());
+            assertEquals(i + 1, film.get("genres").get(0).get("id").asInt());
+            assertEquals(i == 1 ? 1 : 0, film.get("likes").size());
+        }
+    }
+
     @Test
     public void findFilmByIdWhenIdIsExist() throws Exception {
         ObjectMapper objectMapper = new ObjectMapper();
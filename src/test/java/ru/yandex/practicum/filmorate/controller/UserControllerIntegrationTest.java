@@ -781,4 +781,27 @@ public class UserControllerIntegrationTest {
                         " 1.0 не являются целым числом", Objects.requireNonNull(result.getResolvedException()).getMessage()));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void friendSuggestionsAreRankedByMutualFriends() throws Exception {
+        for (int i = 1; i < 5; i++) {
+            inMemoryUserStorage.create(new User("email@leo" + i + ".ru", "login" + i, "name" + i,
+                    LocalDate.parse("1995-12-27")));
+        }
+        inMemoryUserStorage.addFriends(1, 2);
+        inMemoryUserStorage.addFriends(2, 3);
+        inMemoryUserStorage.addFriends(2, 4);
+        inMemoryUserStorage.addFriends(3, 4);
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/users/1/friends/suggestions"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(3))
+                .andExpect(jsonPath("$[1].id").value(4));
+
+        inMemoryUserStorage.addFriends(1, 3);
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/users/1/friends/suggestions"))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(4));
+    }
+
+}
@@ -12,6 +12,7 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import ru.yandex.practicum.filmorate.exception.IdNotFoundException;
 import ru.yandex.practicum.filmorate.exception.IdPassingException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
@@ -21,6 +22,7 @@ import java.time.LocalDate;
 import java.util.Objects;
 
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -611,6 +613,34 @@ public class UserControllerIntegrationTestDbStorage {
                 .andReturn();
     }
 
+    @Test
+    public void getUserPageRequestWhenSortIsDesc() throws Exception {
+        for (int i = 1; i < 6; i++) {
+            userDbStorage.create(User.builder()
+                    .email("email@leo" + i + ".ru")
+                    .login("login" + i)
+                    .name("name" + i)
+                    .birthday(LocalDate.parse("1995-12-27").plusMonths(i))
+                    .build());
+        }
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/users?limit=2&afterId=4&sort=desc"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id").value(3))
+                .andExpect(jsonPath("$[1].id").value(2))
+                .andReturn();
+    }
+
+    @Test
+    public void getUserPageRequestWhenLimitIsNotCorrect() throws Exception {
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/users?limit=0"))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof ValidationException));
+    }
+
     @Test
     public void finByIdWhenIdIsExist() throws Exception {
         String jsonUser;
@@ -928,4 +958,45 @@ public class UserControllerIntegrationTestDbStorage {
                         " 1.0 не являются целым числом", Objects.requireNonNull(result.getResolvedException()).getMessage()));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void friendSuggestionsAreRankedByMutualFriends() throws Exception {
+        for (int i = 1; i < 6; i++) {
+            userDbStorage.create(User.builder()
+                    .email("email@leo" + i + ".ru")
+                    .login("login" + i)
+                    .name("name" + i)
+                    .birthday(LocalDate.parse("1995-12-27"))
+                    .build());
+        }
+        userDbStorage.addFriends(1, 2);
+        userDbStorage.addFriends(1, 3);
+        userDbStorage.addFriends(4, 2);
+        userDbStorage.addFriends(4, 3);
+        userDbStorage.addFriends(5, 2);
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/users/1/friends/suggestions"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id").value(4))
+                .andExpect(jsonPath("$[1].id").value(5));
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/users/1/friends/suggestions").param("count", "1"))
+                .andExpect(jsonPath("$", hasSize(1)));
+
+        this.mockMvc.perform(MockMvcRequestBuilders.put("/users/1/friends/4"))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/users/1/friends/suggestions"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(5))
+                .andExpect(jsonPath("$[0].login").value("login5"));
+        this.mockMvc.perform(MockMvcRequestBuilders.delete("/users/1/friends/2"))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/users/1/friends/suggestions"))
+                .andExpect(jsonPath("$", empty()));
+
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/users/99/friends/suggestions"))
+                .andExpect(status().isNotFound());
+        this.mockMvc.perform(MockMvcRequestBuilders.get("/users/1/friends/suggestions").param("count", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+}
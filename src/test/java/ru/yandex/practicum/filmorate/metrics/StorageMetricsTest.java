@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StorageMetricsTest {
+    private EmbeddedDatabase dataSource;
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .addScript("dataForFilmControllerTest.sql")
+                .build();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    public void storageCallsAreTimedWithMethodAndException() {
+        StorageMetricsPostProcessor postProcessor = new StorageMetricsPostProcessor(
+                new StaticListableBeanFactory(Map.of("meterRegistry", meterRegistry))
+                        .getBeanProvider(MeterRegistry.class));
+        UserStorage userStorage = (UserStorage) postProcessor.postProcessAfterInitialization(
+                new InMemoryUserStorage(), "inMemoryUserStorage");
+
+        for (int i = 1; i <= 2; i++) {
+            userStorage.create(User.builder()
+                    .email("user" + i + "@mail.ru")
+                    .login("login" + i)
+                    .birthday(LocalDate.parse("1990-01-01"))
+                    .build());
+        }
+        userStorage.addFriends(1, 2);
+        assertThrows(ValidationException.class, () -> userStorage.addFriends(1, 2));
+
+        assertEquals(2, meterRegistry.get(StorageMetricsInterceptor.METRIC_NAME)
+                .tags("storage", "InMemoryUserStorage", "method", "create", "exception", "none")
+                .timer().count());
+        assertEquals(1, meterRegistry.get(StorageMetricsInterceptor.METRIC_NAME)
+                .tags("method", "addFriends", "exception", "ValidationException")
+                .timer().count());
+    }
+
+    @Test
+    public void queriesAreCountedPerThread() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new QueryCountingDataSource(dataSource));
+        FilmDbStorage filmDbStorage = new FilmDbStorage(jdbcTemplate, new ReferenceDataCache(jdbcTemplate));
+        for (int i = 1; i <= 3; i++) {
+            filmDbStorage.create(Film.builder()
+                    .name("name" + i)
+                    .description("description" + i)
+                    .releaseDate(LocalDate.parse("2000-01-01"))
+                    .duration(100)
+                    .likes(new HashMap<>())
+                    .mpa(new Mpa(1))
+                    .genres(new ArrayList<>(List.of(new Genre(i))))
+                    .build());
+        }
+
+        QueryCounter.start();
+        filmDbStorage.findAll();
+        assertEquals(3, QueryCounter.stop());
+
+        filmDbStorage.findAll();
+        assertEquals(0, QueryCounter.stop());
+    }
+}
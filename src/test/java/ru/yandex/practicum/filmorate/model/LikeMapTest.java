@@ -0,0 +1,49 @@
+package ru.yandex.practicum.filmorate.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LikeMapTest {
+
+    @Test
+    public void behavesLikeHashMapForRandomOperations() {
+        Map<Integer, Emoji> expected = new HashMap<>();
+        LikeMap likes = new LikeMap();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10_000; i++) {
+            int userId = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(userId), likes.remove(userId));
+            } else {
+                assertEquals(expected.put(userId, Emoji.LIKE), likes.put(userId, Emoji.LIKE));
+            }
+        }
+
+        assertEquals(expected, likes);
+        assertEquals(likes, expected);
+        assertEquals(expected.hashCode(), likes.hashCode());
+        assertEquals(expected.size(), likes.size());
+        assertEquals(expected, new LikeMap(likes));
+    }
+
+    @Test
+    public void iteratesInAscendingUserIdOrder() {
+        LikeMap likes = new LikeMap(Map.of(3, Emoji.LIKE, 1, Emoji.LIKE, 2, Emoji.LIKE));
+
+        assertEquals("{1=LIKE, 2=LIKE, 3=LIKE}", likes.toString());
+
+        Iterator<Map.Entry<Integer, Emoji>> iterator = likes.entrySet().iterator();
+        iterator.next();
+        iterator.remove();
+        assertEquals("{2=LIKE, 3=LIKE}", likes.toString());
+        assertFalse(likes.containsKey(1));
+        assertNull(likes.get("1"));
+    }
+}
@@ -0,0 +1,147 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.exception.LikeQueueOverflowException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.LikeStatus;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LikeWriteBehindQueueTest {
+    private static final long NEVER = 3_600_000;
+
+    @TempDir
+    Path journalDir;
+
+    private EmbeddedDatabase dataSource;
+    private FilmDbStorage filmDbStorage;
+    private FilmService filmService;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .addScript("dataForFilmControllerTest.sql")
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        filmDbStorage = new FilmDbStorage(jdbcTemplate, new ReferenceDataCache(jdbcTemplate));
+        UserDbStorage userDbStorage = new UserDbStorage(jdbcTemplate);
+        filmService = new FilmService(filmDbStorage, new UserService(userDbStorage));
+
+        filmDbStorage.create(Film.builder()
+                .name("name")
+                .description("description")
+                .releaseDate(LocalDate.parse("2000-01-01"))
+                .duration(90)
+                .likes(new HashMap<>())
+                .mpa(new Mpa(1))
+                .genres(new ArrayList<>())
+                .build());
+        for (int i = 1; i <= 3; i++) {
+            userDbStorage.create(User.builder()
+                    .email("email@leo" + i + ".ru")
+                    .login("login" + i)
+                    .name("name" + i)
+                    .birthday(LocalDate.parse("1995-12-27"))
+                    .build());
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    public void coalescesEventsAndWritesThemOnFlush() throws Exception {
+        LikeWriteBehindQueue queue = new LikeWriteBehindQueue(filmService, 100, 1000, NEVER, 10,
+                journalDir.toString());
+        queue.start();
+
+        assertEquals(LikeStatus.QUEUED, queue.enqueue(new LikeEvent(1, 1, LikeOperation.LIKE)).getStatus());
+        queue.enqueue(new LikeEvent(1, 2, LikeOperation.LIKE));
+        queue.enqueue(new LikeEvent(1, 2, LikeOperation.UNLIKE));
+        queue.enqueue(new LikeEvent(1, 3, LikeOperation.LIKE));
+        queue.enqueue(new LikeEvent(99, 3, LikeOperation.LIKE));
+        assertEquals(4, queue.size());
+        assertEquals(0, filmDbStorage.findById(1).getLikeCount());
+
+        queue.flush();
+
+        assertEquals(0, queue.size());
+        assertEquals(Set.of(1, 3), filmDbStorage.findById(1).getLikes().keySet());
+        assertEquals(2, filmDbStorage.findById(1).getLikeCount());
+        queue.stop();
+        assertEquals(0, segmentCount());
+    }
+
+    @Test
+    public void replaysJournalAfterRestart() throws Exception {
+        LikeWriteBehindQueue crashed = new LikeWriteBehindQueue(filmService, 100, 1000, NEVER, 10,
+                journalDir.toString());
+        crashed.start();
+        crashed.enqueue(new LikeEvent(1, 1, LikeOperation.LIKE));
+        crashed.enqueue(new LikeEvent(1, 2, LikeOperation.LIKE));
+        crashed.enqueue(new LikeEvent(1, 1, LikeOperation.UNLIKE));
+        try (Stream<Path> files = Files.list(journalDir)) {
+            Files.writeString(files.findFirst().orElseThrow(), "1;3;LI", StandardOpenOption.APPEND);
+        }
+
+        LikeWriteBehindQueue restarted = new LikeWriteBehindQueue(filmService, 100, 1000, NEVER, 10,
+                journalDir.toString());
+        restarted.start();
+        restarted.flush();
+
+        assertEquals(Set.of(2), filmDbStorage.findById(1).getLikes().keySet());
+        restarted.stop();
+        assertEquals(0, segmentCount());
+    }
+
+    @Test
+    public void rejectsNewPairsWhenFull() throws Exception {
+        LikeWriteBehindQueue queue = new LikeWriteBehindQueue(filmService, 1, 1000, NEVER, 10,
+                journalDir.toString());
+        queue.start();
+
+        queue.enqueue(new LikeEvent(1, 1, LikeOperation.LIKE));
+        queue.enqueue(new LikeEvent(1, 1, LikeOperation.UNLIKE));
+        assertThrows(LikeQueueOverflowException.class, () -> queue.enqueue(new LikeEvent(1, 2, LikeOperation.LIKE)));
+
+        queue.flush();
+        queue.enqueue(new LikeEvent(1, 2, LikeOperation.LIKE));
+        queue.stop();
+        assertEquals(Set.of(2), filmDbStorage.findById(1).getLikes().keySet());
+    }
+
+    private long segmentCount() throws Exception {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.count();
+        }
+    }
+}
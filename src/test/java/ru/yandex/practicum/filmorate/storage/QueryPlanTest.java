@@ -0,0 +1,189 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.model.Emoji;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.SearchField;
+import ru.yandex.practicum.filmorate.model.SortOrder;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ Прогоняет типовые операции FilmDbStorage и UserDbStorage, собирает все выполненные
+ ими запросы из статистики H2 и проверяет планы через EXPLAIN: запрос с условием
+ WHERE не должен читать таблицу полным сканированием. Запросы без WHERE
+ (полные выборки списков и справочников) сканируют таблицы намеренно.
+ */
+class QueryPlanTest {
+    private static final Pattern FINAL_TABLE = Pattern.compile("(?:FINAL|OLD) TABLE\\s*\\((.*)\\)\\s*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private FilmDbStorage filmDbStorage;
+    private UserDbStorage userDbStorage;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .addScript("dataForFilmControllerTest.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        filmDbStorage = new FilmDbStorage(jdbcTemplate, new ReferenceDataCache(jdbcTemplate));
+        userDbStorage = new UserDbStorage(jdbcTemplate);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    public void filteredQueriesOfStoragesDoNotScanTables() {
+        jdbcTemplate.execute("SET QUERY_STATISTICS TRUE");
+        runStorageOperations();
+
+        List<String> statements = jdbcTemplate.queryForList("SELECT SQL_STATEMENT " +
+                "FROM INFORMATION_SCHEMA.QUERY_STATISTICS", String.class);
+        assertFalse(statements.isEmpty(), "Не собрано ни одного запроса");
+
+        List<String> regressions = new ArrayList<>();
+        for (String statement : statements) {
+            String explained = explainedPart(statement);
+            if (explained == null || !explained.toUpperCase().contains(" WHERE ")) {
+                continue;
+            }
+            String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + explained, String.class));
+            if (plan.contains(".tableScan")) {
+                regressions.add(plan);
+            }
+        }
+
+        assertTrue(regressions.isEmpty(), "Запросы читают таблицы полным сканированием:\n"
+                + String.join("\n\n", regressions));
+    }
+
+    private void runStorageOperations() {
+        for (int i = 1; i <= 3; i++) {
+            userDbStorage.create(User.builder()
+                    .email("plan" + i + "@mail.ru")
+                    .login("plan" + i)
+                    .name("plan" + i)
+                    .birthday(LocalDate.parse("1990-01-01"))
+                    .build());
+        }
+        userDbStorage.addFriends(1, 3);
+        userDbStorage.addFriends(2, 3);
+        userDbStorage.addFriends(3, 1);
+        userDbStorage.findFriendsById(1);
+        userDbStorage.findMutualFriendsByTwoIds(1, 2);
+        userDbStorage.deleteFriends(2, 3);
+        userDbStorage.findById(1);
+        userDbStorage.update(userDbStorage.findById(2));
+        userDbStorage.findAll();
+        userDbStorage.findPage(1, 10, SortOrder.ASC);
+
+        List<Genre> genres = new ArrayList<>();
+        genres.add(new Genre(1));
+        genres.add(new Genre(2));
+        Film film = filmDbStorage.create(Film.builder()
+                .name("plan")
+                .description("plan")
+                .releaseDate(LocalDate.parse("2000-01-01"))
+                .duration(100)
+                .likes(new HashMap<>())
+                .mpa(new Mpa(1))
+                .genres(genres)
+                .build());
+        filmDbStorage.addLike(film.getId(), 1);
+        filmDbStorage.addLike(film.getId(), 2);
+        filmDbStorage.removeLike(film.getId(), 2);
+        filmDbStorage.addLikeAndCount(film.getId(), 2);
+        filmDbStorage.addLikeAndCount(film.getId(), 2);
+        filmDbStorage.removeLikeAndCount(film.getId(), 2);
+        filmDbStorage.react(film.getId(), 2, Emoji.LOVE);
+        filmDbStorage.react(film.getId(), 2, Emoji.WOW);
+        filmDbStorage.topFilmsByReaction(Emoji.WOW, 10, FilmView.FULL);
+        filmDbStorage.findExistingIds(List.of(film.getId()));
+        userDbStorage.findExistingIds(List.of(1, 3));
+        filmDbStorage.applyLikes(List.of(new LikeEvent(film.getId(), 3, LikeOperation.LIKE),
+                new LikeEvent(film.getId(), 1, LikeOperation.UNLIKE)));
+
+        Film stored = filmDbStorage.findById(film.getId());
+        stored.getGenres().remove(0);
+        stored.getGenres().add(new Genre(3));
+        filmDbStorage.update(stored);
+        filmDbStorage.topFilms(10);
+        filmDbStorage.topFilms(10, 3, 2000, FilmView.FULL);
+        filmDbStorage.topFilmsByReaction(Emoji.WOW, 10, 3, 2000, FilmView.COUNT);
+
+        List<Film> batch = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            batch.add(Film.builder()
+                    .name("plan batch" + i)
+                    .description("plan batch" + i)
+                    .releaseDate(LocalDate.parse("2001-01-01"))
+                    .duration(100 + i)
+                    .likes(new HashMap<>())
+                    .mpa(new Mpa(2))
+                    .genres(new ArrayList<>(List.of(new Genre(3))))
+                    .build());
+        }
+        Integer batchFilmId = filmDbStorage.createAll(batch).get(0).getId();
+        filmDbStorage.addLikeAndCount(batchFilmId, 1);
+        filmDbStorage.addLikeAndCount(batchFilmId, 3);
+        filmDbStorage.recommendations(1, 10, FilmView.FULL);
+        filmDbStorage.refreshSimilarFilms(ForkJoinPool.commonPool());
+        filmDbStorage.similarFilms(batchFilmId, 10, FilmView.FULL);
+        filmDbStorage.search("plan", EnumSet.allOf(SearchField.class), 10, FilmView.FULL);
+        filmDbStorage.streamAll(streamed -> {
+        });
+        userDbStorage.findFriendSuggestions(2, 10);
+
+        filmDbStorage.findAll();
+        filmDbStorage.findPage(1, 10, SortOrder.DESC);
+        filmDbStorage.findAllGenres();
+        filmDbStorage.findMpaById(1);
+    }
+
+    private String explainedPart(String statement) {
+        String upper = statement.trim().toUpperCase();
+        if (upper.startsWith("SET ") || upper.startsWith("EXPLAIN") || upper.contains("INFORMATION_SCHEMA")) {
+            return null;
+        }
+        Matcher matcher = FINAL_TABLE.matcher(statement);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+
+        return statement;
+    }
+}
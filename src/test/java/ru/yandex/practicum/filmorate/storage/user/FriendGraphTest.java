@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FriendGraphTest {
+
+    /*
+     Пользователь 1 дружит с 2 и 3. Друзей 2 добавили 40 пользователей с большими ID,
+     друзей 3 - каждый второй из них и сам 2, поэтому таблица счетчиков несколько
+     раз увеличивается, а 2 как друг пользователя 1 в подсказки не попадает.
+     */
+    @Test
+    public void suggestCountsMutualFriendsOfManyCandidates() {
+        List<int[]> edges = new ArrayList<>();
+        edges.add(new int[]{1, 2});
+        edges.add(new int[]{1, 3});
+        edges.add(new int[]{2, 3});
+        for (int i = 0; i < 40; i++) {
+            int userId = 1_000_000 + i;
+            edges.add(new int[]{userId, 2});
+            if (i % 2 == 0) {
+                edges.add(new int[]{userId, 3});
+            }
+        }
+        int[] inviters = edges.stream().mapToInt(edge -> edge[0]).toArray();
+        int[] invitees = edges.stream().mapToInt(edge -> edge[1]).toArray();
+        FriendGraph graph = new FriendGraph(inviters, invitees);
+
+        assertEquals(List.of(1_000_000, 1_000_002, 1_000_004), graph.suggest(1, 3));
+        assertEquals(40, graph.suggest(1, 100).size());
+        assertEquals(1_000_039, graph.suggest(1, 100).get(39));
+
+        graph.add(1, 1_000_000);
+        assertEquals(List.of(1_000_002, 1_000_004), graph.suggest(1, 2));
+        assertEquals(List.of(), graph.suggest(5, 10));
+    }
+}